@@ -0,0 +1,223 @@
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Precomputed transitive closure of a DAG with every vertex's proper
+ * ancestors stored as a {@link CompressedBitmap}.
+ * <p>
+ * Bitmaps are built parents first in reverse topological order. The proper
+ * ancestors of a vertex with one parent p are p plus p's proper ancestors, the
+ * same set for every such child of p, so they all share one bitmap. Common
+ * ancestors of two vertices are then one bitmap intersection plus a check of
+ * the two vertices themselves.
+ */
+public class AncestorBitmapIndex {
+
+	private int vertices;
+	private CompressedBitmap[] proper; // proper[v] = ancestors of v, v excluded.
+	private CompressedBitmap[] shared; // shared[p] = p and its ancestors, built once for p's one-parent children.
+	private int[] merged = new int[16]; // Scratch for unions of parent sets.
+	private final long buildNanos;
+
+	/**
+	 * Builds the bitmaps of every vertex.
+	 *
+	 * @param g     a DAG whose edges point from a vertex to its parents
+	 * @param order g's vertices in topological order
+	 */
+	AncestorBitmapIndex(CsrDigraph g, int[] order) {
+		long begin = System.nanoTime();
+		int V = g.V();
+		vertices = V;
+		proper = new CompressedBitmap[V];
+		shared = new CompressedBitmap[V];
+		for (int k = V - 1; k >= 0; k--) {
+			label(g, order[k]);
+		}
+		buildNanos = System.nanoTime() - begin;
+	}
+
+	/**
+	 * Rebuilds the bitmaps of vertices whose ancestors changed after edges or
+	 * vertices were added to g.
+	 *
+	 * @param g       the updated DAG
+	 * @param changed the vertices to rebuild, each after all of its parents among them
+	 */
+	void relabel(CsrDigraph g, int[] changed) {
+		if (proper.length < g.V()) {
+			int V = Math.max(g.V(), proper.length + (proper.length >> 3));
+			proper = Arrays.copyOf(proper, V);
+			shared = Arrays.copyOf(shared, V);
+		}
+		vertices = g.V();
+		for (int v : changed) {
+			shared[v] = null;
+		}
+		for (int v : changed) {
+			label(g, v);
+		}
+	}
+
+	// Builds the proper ancestors of v from its parents' bitmaps.
+	private void label(CsrDigraph g, int v) {
+		int from = g.offsets[v];
+		int to = g.offsets[v + 1];
+		if (to - from == 1) {
+			proper[v] = withSelf(g.targets[from]);
+			return;
+		}
+		int n = 0;
+		for (int i = from; i < to; i++) {
+			n += 1 + proper[g.targets[i]].cardinality();
+		}
+		if (merged.length < n) {
+			merged = new int[Math.max(n, merged.length * 2)];
+		}
+		n = 0;
+		for (int i = from; i < to; i++) {
+			int parent = g.targets[i];
+			merged[n++] = parent;
+			for (int x : proper[parent].toArray()) {
+				merged[n++] = x;
+			}
+		}
+		Arrays.sort(merged, 0, n);
+		int size = 0;
+		for (int j = 0; j < n; j++) {
+			if (size == 0 || merged[size - 1] != merged[j]) {
+				merged[size++] = merged[j];
+			}
+		}
+		proper[v] = CompressedBitmap.of(merged, size);
+	}
+
+	// p and its proper ancestors, shared by every one-parent child of p.
+	private CompressedBitmap withSelf(int p) {
+		if (shared[p] == null) {
+			int[] values = insert(proper[p].toArray(), p);
+			shared[p] = CompressedBitmap.of(values, values.length);
+		}
+		return shared[p];
+	}
+
+	// A copy of the sorted array with value inserted in order.
+	private static int[] insert(int[] sorted, int value) {
+		int[] values = new int[sorted.length + 1];
+		int k = 0;
+		while (k < sorted.length && sorted[k] < value) {
+			values[k] = sorted[k];
+			k++;
+		}
+		values[k] = value;
+		System.arraycopy(sorted, k, values, k + 1, sorted.length - k);
+		return values;
+	}
+
+	/**
+	 * Returns every vertex that is an ancestor of some vertex of a and of some
+	 * vertex of b, the vertices themselves included, in increasing order.
+	 */
+	int[] common(int[] a, int[] b) {
+		if (a.length == 1 && b.length == 1) {
+			return common(a[0], b[0]);
+		}
+		int[] all = new int[0];
+		for (int x : a) {
+			for (int y : b) {
+				int[] pair = common(x, y);
+				int[] union = new int[all.length + pair.length];
+				int size = 0;
+				int i = 0;
+				int j = 0;
+				while (i < all.length || j < pair.length) {
+					int next = j == pair.length || (i < all.length && all[i] <= pair[j]) ? all[i++] : pair[j++];
+					if (size == 0 || union[size - 1] != next) {
+						union[size++] = next;
+					}
+				}
+				all = Arrays.copyOf(union, size);
+			}
+		}
+		return all;
+	}
+
+	// Number of vertices common(a, b) returns.
+	int commonCount(int[] a, int[] b) {
+		if (a.length == 1 && b.length == 1) {
+			int x = a[0];
+			int y = b[0];
+			if (x == y) {
+				return 1 + proper[x].cardinality();
+			}
+			int count = proper[x].andCardinality(proper[y]);
+			if (proper[y].contains(x)) {
+				count++;
+			}
+			if (proper[x].contains(y)) {
+				count++;
+			}
+			return count;
+		}
+		return common(a, b).length;
+	}
+
+	// Queries only read the bitmaps, so any number of threads may run them.
+	private int[] common(int x, int y) {
+		if (x == y) {
+			return insert(proper[x].toArray(), x);
+		}
+		int[] both = proper[x].and(proper[y]);
+		// At most one of x and y is an ancestor of the other in a DAG.
+		if (proper[y].contains(x)) {
+			return insert(both, x);
+		}
+		if (proper[x].contains(y)) {
+			return insert(both, y);
+		}
+		return both;
+	}
+
+	// Number of distinct bitmaps; one-parent siblings share theirs.
+	public int bitmaps() {
+		Map<CompressedBitmap, Boolean> seen = new IdentityHashMap<>();
+		for (int v = 0; v < vertices; v++) {
+			seen.put(proper[v], Boolean.TRUE);
+		}
+		return seen.size();
+	}
+
+	public long buildMillis() {
+		return buildNanos / 1_000_000;
+	}
+
+	// Approximate heap bytes held by the index: distinct bitmaps plus the two reference arrays.
+	public long memoryBytes() {
+		Map<CompressedBitmap, Boolean> seen = new IdentityHashMap<>();
+		long bytes = 2 * (16 + 4L * proper.length) + 16 + 4L * merged.length;
+		for (int v = 0; v < vertices; v++) {
+			for (CompressedBitmap bitmap : new CompressedBitmap[] { proper[v], shared[v] }) {
+				if (bitmap != null && seen.put(bitmap, Boolean.TRUE) == null) {
+					bytes += bitmap.memoryBytes();
+				}
+			}
+		}
+		return bytes;
+	}
+
+	@Override
+	public String toString() {
+		long[] containers = new long[3];
+		Map<CompressedBitmap, Boolean> seen = new IdentityHashMap<>();
+		for (int v = 0; v < vertices; v++) {
+			if (seen.put(proper[v], Boolean.TRUE) == null) {
+				proper[v].countContainers(containers);
+			}
+		}
+		return "AncestorBitmapIndex[vertices=" + vertices + ", bitmaps=" + seen.size() + ", containers(array/bitset/run)="
+				+ containers[0] + "/" + containers[1] + "/" + containers[2] + ", bytes=" + memoryBytes() + ", buildMillis="
+				+ buildMillis() + "]";
+	}
+
+}
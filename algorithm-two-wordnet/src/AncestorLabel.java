@@ -0,0 +1,79 @@
+import java.util.Arrays;
+
+/**
+ * Every ancestor of a set of source vertices together with its minimum
+ * distance from the sources, sorted by vertex id. The shortest ancestral path
+ * between two source sets is then a linear merge of their two labels instead
+ * of a graph traversal.
+ */
+class AncestorLabel {
+
+	final int[] ids; // Ancestor vertex ids in increasing order.
+	final int[] dist; // dist[i] = minimum distance from the sources to ids[i].
+
+	AncestorLabel(int[] ids, int[] dist) {
+		this.ids = ids;
+		this.dist = dist;
+	}
+
+	int size() {
+		return ids.length;
+	}
+
+	/**
+	 * Merges two labels and returns the packed (ancestor, length) of the
+	 * closest common ancestor, (-1, -1) if there is none.
+	 */
+	static long meet(AncestorLabel a, AncestorLabel b) {
+		return meet(a.ids, a.dist, 0, a.ids.length, b.ids, b.dist, 0, b.ids.length);
+	}
+
+	/**
+	 * Merges the label blocks aIds[aFrom..aTo) and bIds[bFrom..bTo) and returns
+	 * the packed (ancestor, length) of the closest common ancestor, (-1, -1) if
+	 * there is none.
+	 */
+	static long meet(int[] aIds, int[] aDist, int aFrom, int aTo, int[] bIds, int[] bDist, int bFrom, int bTo) {
+		int ancestor = -1;
+		int length = -1;
+		int i = aFrom;
+		int j = bFrom;
+		while (i < aTo && j < bTo) {
+			int a = aIds[i];
+			int b = bIds[j];
+			if (a < b) {
+				i++;
+			} else if (a > b) {
+				j++;
+			} else {
+				int dist = aDist[i] + bDist[j];
+				if (length < 0 || dist < length) {
+					length = dist;
+					ancestor = a;
+				}
+				i++;
+				j++;
+			}
+		}
+		return PairCache.pack(ancestor, length);
+	}
+
+	// Ids present in both labels, ascending.
+	static int[] common(AncestorLabel a, AncestorLabel b) {
+		int[] common = new int[Math.min(a.size(), b.size())];
+		int size = 0;
+		for (int i = 0, j = 0; i < a.size() && j < b.size();) {
+			if (a.ids[i] < b.ids[j]) {
+				i++;
+			} else if (a.ids[i] > b.ids[j]) {
+				j++;
+			} else {
+				common[size++] = a.ids[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(common, size);
+	}
+
+}
@@ -0,0 +1,187 @@
+import java.util.Arrays;
+
+/**
+ * Precomputed ancestor labels for every vertex of a DAG.
+ * <p>
+ * The block ids[start[v]..end[v]) holds every ancestor of v (v included) in
+ * increasing id order, and dist holds the matching minimum distances. Blocks
+ * are built parents first in reverse topological order: the label of v is
+ * (v, 0) merged with every parent's label shifted by one. A shortest ancestral
+ * path query is then a linear merge of two blocks and never touches the graph.
+ */
+public class AncestorLabelIndex {
+
+	private int vertices;
+	private int[] start;
+	private int[] end;
+	private int[] ids;
+	private int[] dist;
+	private int size; // Used length of ids and dist, stale blocks included.
+	private int stale; // Entries in blocks replaced by relabel().
+	private long[] merged = new long[16]; // (id << 32 | dist) of every parent entry, sorted to merge.
+	private final long buildNanos;
+
+	/**
+	 * Builds the labels of every vertex.
+	 *
+	 * @param g     a DAG whose edges point from a vertex to its parents
+	 * @param order g's vertices in topological order
+	 */
+	AncestorLabelIndex(CsrDigraph g, int[] order) {
+		long begin = System.nanoTime();
+		int V = g.V();
+		vertices = V;
+		start = new int[V];
+		end = new int[V];
+		ids = new int[Math.max(16, V * 4)];
+		dist = new int[ids.length];
+		for (int k = V - 1; k >= 0; k--) {
+			label(g, order[k]);
+		}
+		ids = Arrays.copyOf(ids, size);
+		dist = Arrays.copyOf(dist, size);
+		buildNanos = System.nanoTime() - begin;
+	}
+
+	/**
+	 * Rebuilds the labels of vertices whose ancestors changed after edges or
+	 * vertices were added to g. Their new blocks are appended and the old ones
+	 * left as stale entries until they outnumber the live ones.
+	 *
+	 * @param g       the updated DAG
+	 * @param changed the vertices to relabel, each after all of its parents among them
+	 */
+	void relabel(CsrDigraph g, int[] changed) {
+		if (start.length < g.V()) {
+			int V = Math.max(g.V(), start.length + (start.length >> 3));
+			start = Arrays.copyOf(start, V);
+			end = Arrays.copyOf(end, V);
+		}
+		vertices = g.V();
+		for (int v : changed) {
+			stale += end[v] - start[v];
+			label(g, v);
+		}
+		if (stale > size - stale) {
+			compact();
+		}
+	}
+
+	// Appends the label of v: (v, 0) merged with every parent's label shifted by one.
+	private void label(CsrDigraph g, int v) {
+		int n = 1;
+		for (int i = g.offsets[v]; i < g.offsets[v + 1]; i++) {
+			int parent = g.targets[i];
+			n += end[parent] - start[parent];
+		}
+		if (merged.length < n) {
+			merged = new long[Math.max(n, merged.length * 2)];
+		}
+		n = 0;
+		merged[n++] = (long) v << 32;
+		for (int i = g.offsets[v]; i < g.offsets[v + 1]; i++) {
+			int parent = g.targets[i];
+			for (int j = start[parent]; j < end[parent]; j++) {
+				merged[n++] = ((long) ids[j] << 32) | (dist[j] + 1);
+			}
+		}
+		Arrays.sort(merged, 0, n);
+		if (ids.length < size + n) {
+			ids = Arrays.copyOf(ids, Math.max(size + n, ids.length * 2));
+			dist = Arrays.copyOf(dist, ids.length);
+		}
+		start[v] = size;
+		for (int j = 0; j < n; j++) {
+			int id = (int) (merged[j] >>> 32);
+			// Equal ids sort by distance, so the first copy is the shortest.
+			if (size > start[v] && ids[size - 1] == id) {
+				continue;
+			}
+			ids[size] = id;
+			dist[size] = (int) merged[j];
+			size++;
+		}
+		end[v] = size;
+	}
+
+	// Copies the live blocks into right-sized arrays.
+	private void compact() {
+		int[] liveIds = new int[size - stale];
+		int[] liveDist = new int[liveIds.length];
+		int n = 0;
+		for (int v = 0; v < vertices; v++) {
+			int length = end[v] - start[v];
+			System.arraycopy(ids, start[v], liveIds, n, length);
+			System.arraycopy(dist, start[v], liveDist, n, length);
+			start[v] = n;
+			n += length;
+			end[v] = n;
+		}
+		ids = liveIds;
+		dist = liveDist;
+		size = n;
+		stale = 0;
+	}
+
+	/**
+	 * Returns the packed (ancestor, length) of the shortest ancestral path
+	 * between v and w, (-1, -1) if there is none.
+	 */
+	long meet(int v, int w) {
+		return AncestorLabel.meet(ids, dist, start[v], end[v], ids, dist, start[w], end[w]);
+	}
+
+	// The merged label of a set of vertices: each ancestor at its minimum distance.
+	AncestorLabel label(int[] vertices) {
+		if (vertices.length == 1) {
+			int v = vertices[0];
+			return new AncestorLabel(Arrays.copyOfRange(ids, start[v], end[v]),
+					Arrays.copyOfRange(dist, start[v], end[v]));
+		}
+		int n = 0;
+		for (int v : vertices) {
+			n += end[v] - start[v];
+		}
+		long[] merged = new long[n];
+		n = 0;
+		for (int v : vertices) {
+			for (int j = start[v]; j < end[v]; j++) {
+				merged[n++] = ((long) ids[j] << 32) | dist[j];
+			}
+		}
+		Arrays.sort(merged);
+		int[] labelIds = new int[n];
+		int[] labelDist = new int[n];
+		int size = 0;
+		for (int j = 0; j < n; j++) {
+			int id = (int) (merged[j] >>> 32);
+			if (size == 0 || labelIds[size - 1] != id) {
+				labelIds[size] = id;
+				labelDist[size] = (int) merged[j];
+				size++;
+			}
+		}
+		return new AncestorLabel(Arrays.copyOf(labelIds, size), Arrays.copyOf(labelDist, size));
+	}
+
+	// Total number of (ancestor, distance) entries over all vertices.
+	public long entries() {
+		return size - stale;
+	}
+
+	public long buildMillis() {
+		return buildNanos / 1_000_000;
+	}
+
+	// Approximate heap bytes held by the index arrays.
+	public long memoryBytes() {
+		return 4L * (start.length + end.length + ids.length + dist.length) + 8L * merged.length + 5 * 16;
+	}
+
+	@Override
+	public String toString() {
+		return "AncestorLabelIndex[vertices=" + vertices + ", entries=" + entries() + ", bytes=" + memoryBytes()
+				+ ", buildMillis=" + buildMillis() + "]";
+	}
+
+}
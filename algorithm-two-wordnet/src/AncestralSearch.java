@@ -0,0 +1,440 @@
+import java.util.Arrays;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+
+/**
+ * Reusable BFS scratch state for shortest ancestral path queries on a
+ * {@link CsrDigraph}.
+ * <p>
+ * Distances and queues are V-sized arrays allocated once. A vertex counts as
+ * visited by a side only if its mark equals the current query's epoch, so a
+ * new query just bumps the epoch instead of clearing anything. The cost of a
+ * query is proportional to the vertices it reaches and it allocates nothing.
+ * The graph and the scratch are {@link IntArray}s, so the same search runs
+ * over int[]s on the heap and over buffers outside it.
+ */
+class AncestralSearch implements PathSearch {
+
+	private CsrDigraph g; // Null when searching buffers.
+	private IntArray offsets; // The searched edges in CSR form.
+	private IntArray targets;
+	private final IntFunction<IntArray> allocate; // Makes zeroed scratch arrays.
+
+	private IntArray vDist; // vDist[x] = distance from the v sources, valid if vMark[x] == epoch.
+	private IntArray wDist;
+	private IntArray vMark;
+	private IntArray wMark;
+	private IntArray vQueue; // Doubles as the list of vertices reached from v.
+	private IntArray wQueue;
+	private int epoch;
+
+	private int ancestor = -1;
+	private int length = -1;
+	private int dequeued; // Vertices expanded by the last query.
+	private int relaxed; // Edges examined by the last query.
+	private final int[] pair = new int[2]; // Single-vertex pair queries reuse this.
+
+	AncestralSearch(CsrDigraph g) {
+		this(g.V(), IntArray.of(g.offsets), IntArray.of(g.targets), IntArray::heap);
+		this.g = g;
+	}
+
+	// Searches the V-vertex graph held in offsets and targets, with scratch
+	// arrays made by allocate; e.g. direct buffers for a graph off the heap.
+	AncestralSearch(int V, IntArray offsets, IntArray targets, IntFunction<IntArray> allocate) {
+		this.offsets = offsets;
+		this.targets = targets;
+		this.allocate = allocate;
+		vDist = allocate.apply(V);
+		wDist = allocate.apply(V);
+		vMark = allocate.apply(V);
+		wMark = allocate.apply(V);
+		vQueue = allocate.apply(V);
+		wQueue = allocate.apply(V);
+	}
+
+	// The graph this scratch searches.
+	CsrDigraph graph() {
+		return g;
+	}
+
+	// Points the scratch at an updated copy of the graph, growing the arrays
+	// if it has more vertices. Fresh marks are zero, below the next epoch.
+	void retarget(CsrDigraph graph) {
+		g = graph;
+		offsets = IntArray.of(graph.offsets);
+		targets = IntArray.of(graph.targets);
+		if (graph.V() > vDist.length()) {
+			int size = Math.max(graph.V(), vDist.length() + (vDist.length() >> 3));
+			vDist = allocate.apply(size);
+			wDist = allocate.apply(size);
+			vMark = allocate.apply(size);
+			wMark = allocate.apply(size);
+			vQueue = allocate.apply(size);
+			wQueue = allocate.apply(size);
+		}
+	}
+
+	// v and w in this scratch's two-slot array, for callers that need the
+	// vertices of a pair as arrays; valid until the next call.
+	int[] pair(int v, int w) {
+		pair[0] = v;
+		pair[1] = w;
+		return pair;
+	}
+
+	@Override
+	public int ancestor() {
+		return ancestor;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public int dequeued() {
+		return dequeued;
+	}
+
+	@Override
+	public int relaxed() {
+		return relaxed;
+	}
+
+	// Overrides the traversal counters, for callers that chain several searches into one query.
+	void setCounters(int dequeued, int relaxed) {
+		this.dequeued = dequeued;
+		this.relaxed = relaxed;
+	}
+
+	@Override
+	public void find(int v, int w) {
+		nextEpoch();
+		vMark.set(v, epoch);
+		vDist.set(v, 0);
+		vQueue.set(0, v);
+		wMark.set(w, epoch);
+		wDist.set(w, 0);
+		wQueue.set(0, w);
+		lockstep(1, 1);
+	}
+
+	@Override
+	public void find(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo) {
+		nextEpoch();
+		int vTail = seed(v, vFrom, vTo, vQueue, vDist, vMark);
+		lockstep(vTail, seed(w, wFrom, wTo, wQueue, wDist, wMark));
+	}
+
+	// Every vertex reachable from the sources with its distance, sorted by id.
+	AncestorLabel label(int[] sources) {
+		return label(sources, 0, sources.length);
+	}
+
+	// Every vertex reachable from sources[from..to) with its distance, sorted by id.
+	AncestorLabel label(int[] sources, int from, int to) {
+		nextEpoch();
+		int reached = bfs(vQueue, seed(sources, from, to, vQueue, vDist, vMark), vDist, vMark);
+		int[] ids = vQueue.copyOf(reached);
+		Arrays.sort(ids);
+		int[] dist = new int[reached];
+		for (int i = 0; i < reached; i++) {
+			dist[i] = vDist.get(ids[i]);
+		}
+		return new AncestorLabel(ids, dist);
+	}
+
+	/**
+	 * Finds the shortest ancestral path between the sources and a set whose
+	 * label is already known with a single BFS up from the sources, looking
+	 * every vertex reached up in the label. Levels are expanded only while
+	 * they are shorter than the best path found, since the label adds a
+	 * non-negative distance; the level at the best length is still looked up,
+	 * as its label sources tie, and ties go to the smallest ancestor id.
+	 *
+	 * @param sources one side of the query is sources[from..to)
+	 * @param label   the ancestor label of the other side
+	 * @return the packed (ancestor, length), (-1, -1) if there is no path
+	 */
+	long meet(int[] sources, int from, int to, AncestorLabel label) {
+		nextEpoch();
+		int tail = seed(sources, from, to, vQueue, vDist, vMark);
+		int best = -1;
+		int ancestor = -1;
+		for (int head = 0; head < tail; head++) {
+			int node = vQueue.get(head);
+			int d = vDist.get(node);
+			if (best >= 0 && d > best) {
+				break;
+			}
+			dequeued++;
+			int k = Arrays.binarySearch(label.ids, node);
+			if (k >= 0) {
+				int candidate = d + label.dist[k];
+				if (best < 0 || candidate < best || (candidate == best && node < ancestor)) {
+					best = candidate;
+					ancestor = node;
+				}
+			}
+			if (best >= 0 && d >= best) {
+				continue;
+			}
+			int end = offsets.get(node + 1);
+			relaxed += end - offsets.get(node);
+			for (int i = offsets.get(node); i < end; i++) {
+				int adjacent = targets.get(i);
+				if (vMark.get(adjacent) != epoch) {
+					vMark.set(adjacent, epoch);
+					vDist.set(adjacent, d + 1);
+					vQueue.set(tail++, adjacent);
+				}
+			}
+		}
+		return PairCache.pack(ancestor, best);
+	}
+
+	// As nearest(sources, downOffsets, downTargets, visit) with the CSR arrays of down.
+	void nearest(int[] sources, CsrDigraph down, IntPredicate visit) {
+		nearest(sources, IntArray.of(down.offsets), IntArray.of(down.targets), visit);
+	}
+
+	/**
+	 * Visits every vertex reachable from the sources by climbing zero or more
+	 * edges of the graph and then descending zero or more edges of its
+	 * reverse, in order of total path length, until visit returns false. The
+	 * climb and the descent are two BFS layers expanded one level at a time:
+	 * the v arrays hold the climbing side and the w arrays the descending side.
+	 * A vertex already reached while climbing is not descended into again,
+	 * since its climbing copy is at least as close and descends too.
+	 *
+	 * @param sources     the starting vertices, visited first
+	 * @param downOffsets the CSR offsets of the reverse of the graph
+	 * @param downTargets the CSR targets of the reverse of the graph
+	 * @param visit       called once per vertex reached; false stops the search
+	 */
+	void nearest(int[] sources, IntArray downOffsets, IntArray downTargets, IntPredicate visit) {
+		nextEpoch();
+		int upTail = seed(sources, 0, sources.length, vQueue, vDist, vMark);
+		for (int i = 0; i < upTail; i++) {
+			if (!visit.test(vQueue.get(i))) {
+				return;
+			}
+		}
+		int upHead = 0;
+		int downHead = 0;
+		int downTail = 0;
+		while (upHead < upTail || downHead < downTail) {
+			int upEnd = upTail;
+			int downEnd = downTail;
+			dequeued += upEnd - upHead + downEnd - downHead;
+			for (int q = upHead; q < upEnd; q++) {
+				int node = vQueue.get(q);
+				int end = offsets.get(node + 1);
+				relaxed += end - offsets.get(node);
+				for (int i = offsets.get(node); i < end; i++) {
+					int parent = targets.get(i);
+					if (vMark.get(parent) != epoch) {
+						vMark.set(parent, epoch);
+						vQueue.set(upTail++, parent);
+						if (wMark.get(parent) != epoch && !visit.test(parent)) {
+							return;
+						}
+					}
+				}
+				downTail = descend(node, downOffsets, downTargets, downTail, visit);
+				if (downTail < 0) {
+					return;
+				}
+			}
+			for (int q = downHead; q < downEnd; q++) {
+				downTail = descend(wQueue.get(q), downOffsets, downTargets, downTail, visit);
+				if (downTail < 0) {
+					return;
+				}
+			}
+			upHead = upEnd;
+			downHead = downEnd;
+		}
+	}
+
+	// Queues and visits the children of node neither side has reached; returns
+	// the new descending tail, or -1 once visit returns false.
+	private int descend(int node, IntArray downOffsets, IntArray downTargets, int downTail, IntPredicate visit) {
+		int end = downOffsets.get(node + 1);
+		relaxed += end - downOffsets.get(node);
+		for (int i = downOffsets.get(node); i < end; i++) {
+			int child = downTargets.get(i);
+			if (vMark.get(child) != epoch && wMark.get(child) != epoch) {
+				wMark.set(child, epoch);
+				wQueue.set(downTail++, child);
+				if (!visit.test(child)) {
+					return -1;
+				}
+			}
+		}
+		return downTail;
+	}
+
+	private int seed(int[] sources, int from, int to, IntArray queue, IntArray dist, IntArray mark) {
+		int tail = 0;
+		for (int i = from; i < to; i++) {
+			int s = sources[i];
+			if (mark.get(s) != epoch) {
+				mark.set(s, epoch);
+				dist.set(s, 0);
+				queue.set(tail++, s);
+			}
+		}
+		return tail;
+	}
+
+	/**
+	 * Expands the two seeded multi-source searches one BFS level at a time, always advancing
+	 * the side whose frontier is nearer its sources. Once every vertex within
+	 * vLevel of v and within wLevel of w is marked, any path not yet seen is at
+	 * least min(vLevel, wLevel) + 1 long, so the search stops as soon as that
+	 * bound reaches the best length found. Among equally short paths the
+	 * smallest ancestor id wins, as in every other way of answering a query.
+	 */
+	private void lockstep(int vTail, int wTail) {
+		ancestor = -1;
+		length = -1;
+		for (int i = 0; i < wTail; i++) {
+			int s = wQueue.get(i);
+			if (vMark.get(s) == epoch && (ancestor < 0 || s < ancestor)) {
+				ancestor = s;
+				length = 0;
+			}
+		}
+		if (length == 0) {
+			return;
+		}
+		int vSources = vTail;
+		int wSources = wTail;
+		int vHead = 0;
+		int wHead = 0;
+		int vLevel = 0;
+		int wLevel = 0;
+		while (vHead < vTail || wHead < wTail) {
+			int vBound = vHead < vTail ? vLevel + 1 : Integer.MAX_VALUE;
+			int wBound = wHead < wTail ? wLevel + 1 : Integer.MAX_VALUE;
+			if (length >= 0 && Math.min(vBound, wBound) >= length) {
+				break;
+			}
+			if (vBound < wBound || (vBound == wBound && vTail - vHead <= wTail - wHead)) {
+				int levelEnd = vTail;
+				vTail = expand(vQueue, vHead, vTail, vDist, vMark, wDist, wMark);
+				vHead = levelEnd;
+				vLevel++;
+			} else {
+				int levelEnd = wTail;
+				wTail = expand(wQueue, wHead, wTail, wDist, wMark, vDist, vMark);
+				wHead = levelEnd;
+				wLevel++;
+			}
+		}
+		if (length > 0 && vHead < vTail && vLevel == length - 1) {
+			sourceTies(vQueue, vHead, vTail, wQueue, wSources, wDist, wMark);
+		}
+		if (length > 0 && wHead < wTail && wLevel == length - 1) {
+			sourceTies(wQueue, wHead, wTail, vQueue, vSources, vDist, vMark);
+		}
+	}
+
+	/**
+	 * The lockstep stops once no unexpanded level can beat the best length, so
+	 * a source of the other side exactly length levels above this side is
+	 * never reached, although it ties the best path. Checks the edges out of
+	 * this side's frontier queue[head..tail) for such sources, keeping the
+	 * smallest ancestor id like every other tie.
+	 */
+	private void sourceTies(IntArray queue, int head, int tail, IntArray otherQueue, int otherSources,
+			IntArray otherDist, IntArray otherMark) {
+		int smallest = Integer.MAX_VALUE;
+		for (int i = 0; i < otherSources; i++) {
+			smallest = Math.min(smallest, otherQueue.get(i));
+		}
+		if (smallest >= ancestor) {
+			return;
+		}
+		for (int q = head; q < tail; q++) {
+			int node = queue.get(q);
+			int end = offsets.get(node + 1);
+			relaxed += end - offsets.get(node);
+			for (int i = offsets.get(node); i < end; i++) {
+				int adjacent = targets.get(i);
+				if (adjacent < ancestor && otherMark.get(adjacent) == epoch && otherDist.get(adjacent) == 0) {
+					ancestor = adjacent;
+				}
+			}
+		}
+	}
+
+	// Marks the successors of queue[head..tail) and records any vertex the other
+	// side has already marked as a candidate ancestor; returns the new tail.
+	private int expand(IntArray queue, int head, int tail, IntArray dist, IntArray mark, IntArray otherDist,
+			IntArray otherMark) {
+		IntArray offsets = this.offsets;
+		IntArray targets = this.targets;
+		int end = tail;
+		dequeued += end - head;
+		for (int q = head; q < end; q++) {
+			int node = queue.get(q);
+			int next = dist.get(node) + 1;
+			int last = offsets.get(node + 1);
+			relaxed += last - offsets.get(node);
+			for (int i = offsets.get(node); i < last; i++) {
+				int adjacent = targets.get(i);
+				if (mark.get(adjacent) != epoch) {
+					mark.set(adjacent, epoch);
+					dist.set(adjacent, next);
+					queue.set(tail++, adjacent);
+					if (otherMark.get(adjacent) == epoch) {
+						int candidate = next + otherDist.get(adjacent);
+						if (length < 0 || candidate < length || (candidate == length && adjacent < ancestor)) {
+							length = candidate;
+							ancestor = adjacent;
+						}
+					}
+				}
+			}
+		}
+		return tail;
+	}
+
+	// Runs BFS from the seeded queue; returns the number of vertices reached.
+	private int bfs(IntArray queue, int tail, IntArray dist, IntArray mark) {
+		int head = 0;
+		while (head < tail) {
+			int node = queue.get(head++);
+			int next = dist.get(node) + 1;
+			int end = offsets.get(node + 1);
+			relaxed += end - offsets.get(node);
+			for (int i = offsets.get(node); i < end; i++) {
+				int adjacent = targets.get(i);
+				if (mark.get(adjacent) != epoch) {
+					mark.set(adjacent, epoch);
+					dist.set(adjacent, next);
+					queue.set(tail++, adjacent);
+				}
+			}
+		}
+		dequeued += tail;
+		return tail;
+	}
+
+	private void nextEpoch() {
+		if (epoch == Integer.MAX_VALUE) {
+			// Marks from 2^31 queries ago could collide with a reused epoch.
+			vMark.fill(0);
+			wMark.fill(0);
+			epoch = 0;
+		}
+		epoch++;
+		dequeued = 0;
+		relaxed = 0;
+	}
+
+}
@@ -0,0 +1,138 @@
+/**
+ * A digraph with every maximal chain of in-degree 1, out-degree 1 vertices
+ * collapsed into one weighted edge.
+ * <p>
+ * The kept vertices are all the others, renumbered 0 .. V() - 1; the reduced
+ * edge from a kept vertex through a chain to the next kept vertex weighs the
+ * number of original edges it replaces, so distances between kept vertices
+ * are unchanged. A chain vertex x lies on exactly one reduced edge,
+ * chainEdge[x], at down[x] original edges above the edge's source and up[x]
+ * below its target. Chains that close a cycle with no way in or out get one
+ * vertex kept so every chain has two ends.
+ */
+class ChainDigraph {
+
+	final int[] offsets; // Reduced CSR rows, indexed by reduced id.
+	final int[] targets; // Reduced ids of the successors.
+	final int[] weights; // weights[i] = original edges replaced by edge i.
+	final int[] original; // original[r] = original id of reduced vertex r.
+	final int[] reduced; // reduced[x] = reduced id of x, or -1 if x is a chain vertex.
+	final int[] chainEdge; // Reduced edge through chain vertex x; -1 if x is kept.
+	final int[] down; // Original edges from chainEdge[x]'s source up to x.
+	final int[] up; // Original edges from x up to chainEdge[x]'s target.
+	final int maxWeight;
+	private final int chainVertices;
+
+	/**
+	 * Whether at least half of g's vertices are chain vertices. Below that the
+	 * reduced graph is barely smaller and the plain BFS, which needs no
+	 * bucket queue, is faster.
+	 */
+	static boolean worthwhile(CsrDigraph g) {
+		int V = g.V();
+		int[] indegree = new int[V];
+		for (int w : g.targets) {
+			indegree[w]++;
+		}
+		int chain = 0;
+		for (int v = 0; v < V; v++) {
+			if (indegree[v] == 1 && g.outdegree(v) == 1) {
+				chain++;
+			}
+		}
+		return V > 0 && chain * 2 >= V;
+	}
+
+	ChainDigraph(CsrDigraph g) {
+		int V = g.V();
+		int[] indegree = new int[V];
+		for (int w : g.targets) {
+			indegree[w]++;
+		}
+		boolean[] kept = new boolean[V];
+		for (int v = 0; v < V; v++) {
+			kept[v] = indegree[v] != 1 || g.outdegree(v) != 1;
+		}
+		// A chain vertex is reached by walking up from the kept vertex below
+		// its chain, unless the chain is a closed cycle; keep one vertex of each.
+		boolean[] reached = new boolean[V];
+		for (int v = 0; v < V; v++) {
+			if (kept[v]) {
+				walkChains(g, kept, reached, v);
+			}
+		}
+		for (int v = 0; v < V; v++) {
+			if (!kept[v] && !reached[v]) {
+				kept[v] = true;
+				walkChains(g, kept, reached, v);
+			}
+		}
+
+		reduced = new int[V];
+		int count = 0;
+		for (int v = 0; v < V; v++) {
+			reduced[v] = kept[v] ? count++ : -1;
+		}
+		chainVertices = V - count;
+		original = new int[count];
+		offsets = new int[count + 1];
+		for (int v = 0; v < V; v++) {
+			if (kept[v]) {
+				original[reduced[v]] = v;
+				offsets[reduced[v] + 1] = offsets[reduced[v]] + g.outdegree(v);
+			}
+		}
+		targets = new int[offsets[count]];
+		weights = new int[targets.length];
+		chainEdge = new int[V];
+		down = new int[V];
+		up = new int[V];
+		int heaviest = 1;
+		for (int r = 0; r < count; r++) {
+			int v = original[r];
+			for (int k = 0; k < g.outdegree(v); k++) {
+				int e = offsets[r] + k;
+				int x = g.targets[g.offsets[v] + k];
+				int length = 1;
+				int first = x;
+				while (!kept[x]) {
+					chainEdge[x] = e;
+					down[x] = length++;
+					x = g.targets[g.offsets[x]];
+				}
+				targets[e] = reduced[x];
+				weights[e] = length;
+				heaviest = Math.max(heaviest, length);
+				for (int y = first; y != x; y = g.targets[g.offsets[y]]) {
+					up[y] = length - down[y];
+				}
+			}
+		}
+		maxWeight = heaviest;
+		for (int v = 0; v < V; v++) {
+			if (kept[v]) {
+				chainEdge[v] = -1;
+			}
+		}
+	}
+
+	// Marks the chain vertices above each parent edge of the kept vertex v.
+	private static void walkChains(CsrDigraph g, boolean[] kept, boolean[] reached, int v) {
+		for (int i = g.offsets[v]; i < g.offsets[v + 1]; i++) {
+			for (int x = g.targets[i]; !kept[x] && !reached[x]; x = g.targets[g.offsets[x]]) {
+				reached[x] = true;
+			}
+		}
+	}
+
+	// Number of kept vertices.
+	int V() {
+		return original.length;
+	}
+
+	// Number of original vertices folded into reduced edges.
+	int chainVertices() {
+		return chainVertices;
+	}
+
+}
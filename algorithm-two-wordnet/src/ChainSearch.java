@@ -0,0 +1,288 @@
+import java.util.Arrays;
+
+/**
+ * Reusable scratch state for shortest ancestral path queries on a
+ * {@link ChainDigraph}.
+ * <p>
+ * Each side runs Dial's algorithm: a circular array of maxWeight + 1 buckets
+ * of pending vertices, where bucket d mod (maxWeight + 1) holds the vertices
+ * at tentative distance d, and a vertex left behind by a later improvement is
+ * skipped when its old bucket is drained. The two sides advance in lockstep
+ * by whole buckets exactly like {@link AncestralSearch}'s BFS levels.
+ * <p>
+ * A source inside a chain starts its side at the top of the chain, up[x]
+ * away. The only ancestors that are not kept vertices are such sources
+ * themselves, reached by the other side through the bottom of their chain;
+ * every relaxation of an edge that carries a source of the other side checks
+ * for that meeting point.
+ */
+class ChainSearch implements PathSearch {
+
+	private final ChainDigraph c;
+	private final Side vSide;
+	private final Side wSide;
+	private int epoch;
+
+	private final int[] vSource = new int[1]; // Single-vertex queries reuse these.
+	private final int[] wSource = new int[1];
+
+	private int ancestor = -1;
+	private int length = -1;
+	private int dequeued;
+	private int relaxed;
+
+	ChainSearch(ChainDigraph c) {
+		this.c = c;
+		vSide = new Side(c);
+		wSide = new Side(c);
+	}
+
+	@Override
+	public int ancestor() {
+		return ancestor;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public int dequeued() {
+		return dequeued;
+	}
+
+	@Override
+	public int relaxed() {
+		return relaxed;
+	}
+
+	@Override
+	public void find(int v, int w) {
+		vSource[0] = v;
+		wSource[0] = w;
+		find(vSource, 0, 1, wSource, 0, 1);
+	}
+
+	@Override
+	public void find(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo) {
+		if (epoch == Integer.MAX_VALUE) {
+			vSide.clearMarks();
+			wSide.clearMarks();
+			epoch = 0;
+		}
+		epoch++;
+		dequeued = 0;
+		relaxed = 0;
+		ancestor = -1;
+		length = -1;
+		vSide.seed(v, vFrom, vTo, epoch);
+		wSide.seed(w, wFrom, wTo, epoch);
+
+		// Sources of one side that are kept vertices or chain tops already
+		// reached by the other, and chain sources with the other side's sources
+		// above them on the same chain.
+		for (int i = 0; i < wSide.seeded; i++) {
+			int r = wSide.seeds[i];
+			if (vSide.mark[r] == epoch) {
+				offer(vSide.dist[r] + wSide.dist[r], c.original[r]);
+			}
+		}
+		for (int i = 0; i < wSide.chainSources; i++) {
+			meetOnChain(vSide, wSide.chainKey[i], 0);
+		}
+		for (int i = 0; i < vSide.chainSources; i++) {
+			meetOnChain(wSide, vSide.chainKey[i], 0);
+		}
+
+		while (true) {
+			int vBound = vSide.nextDistance();
+			int wBound = wSide.nextDistance();
+			if (vBound == Integer.MAX_VALUE && wBound == Integer.MAX_VALUE) {
+				break;
+			}
+			if (length >= 0 && Math.min(vBound, wBound) >= length) {
+				break;
+			}
+			if (vBound < wBound || (vBound == wBound && vSide.bucketSize() <= wSide.bucketSize())) {
+				drain(vSide, wSide);
+			} else {
+				drain(wSide, vSide);
+			}
+		}
+	}
+
+	// Settles the side's current bucket and relaxes the edges of its vertices.
+	private void drain(Side side, Side other) {
+		int d = side.current;
+		int b = d % side.sizes.length;
+		int[] bucket = side.buckets[b];
+		int size = side.sizes[b];
+		side.sizes[b] = 0;
+		side.pending -= size;
+		int[] offsets = c.offsets;
+		int[] targets = c.targets;
+		int[] weights = c.weights;
+		for (int q = 0; q < size; q++) {
+			int r = bucket[q];
+			if (side.dist[r] != d) {
+				continue; // Reached again at a shorter distance since it was queued.
+			}
+			dequeued++;
+			relaxed += offsets[r + 1] - offsets[r];
+			for (int i = offsets[r]; i < offsets[r + 1]; i++) {
+				if (other.edgeMark[i] == epoch) {
+					meetOnChain(other, (long) i << 32, d);
+				}
+				int next = targets[i];
+				int nd = d + weights[i];
+				if (side.mark[next] != epoch || nd < side.dist[next]) {
+					side.push(next, nd, epoch);
+					if (other.mark[next] == epoch) {
+						offer(nd + other.dist[next], c.original[next]);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Offers the nearest source of side on the same reduced edge at or above
+	 * the position in key, for a walk that entered that position at distance
+	 * d from the opposite side.
+	 */
+	private void meetOnChain(Side side, long key, int d) {
+		int k = Arrays.binarySearch(side.chainKey, 0, side.chainSources, key);
+		if (k < 0) {
+			k = -k - 1;
+		}
+		if (k < side.chainSources && (side.chainKey[k] >>> 32) == (key >>> 32)) {
+			offer(d + (int) side.chainKey[k] - (int) key, side.chainVertex[k]);
+		}
+	}
+
+	// Keeps the shorter path, or the smaller ancestor id of two equally short ones.
+	private void offer(int candidate, int vertex) {
+		if (length < 0 || candidate < length || (candidate == length && vertex < ancestor)) {
+			length = candidate;
+			ancestor = vertex;
+		}
+	}
+
+	// One direction of the search: distances, marks and the bucket queue.
+	private static final class Side {
+		private final ChainDigraph c;
+		final int[] dist;
+		int[] mark;
+		int[] edgeMark; // edgeMark[e] == epoch if a source of this side lies inside reduced edge e.
+		final int[][] buckets; // Allocated on first use; heavy chains make many buckets.
+		final int[] sizes;
+		int[] used = new int[16]; // Buckets filled since the last seed, to empty them again.
+		int usedCount;
+		int pending;
+		int current;
+		int[] seeds = new int[4]; // Reduced vertices seeded by the last query.
+		int seeded;
+		long[] chainKey = new long[4]; // (edge << 32 | down) of each source inside a chain, sorted.
+		int[] chainVertex = new int[4];
+		int chainSources;
+
+		Side(ChainDigraph c) {
+			this.c = c;
+			dist = new int[c.V()];
+			mark = new int[c.V()];
+			edgeMark = new int[c.targets.length];
+			buckets = new int[c.maxWeight + 1][];
+			sizes = new int[buckets.length];
+		}
+
+		void clearMarks() {
+			Arrays.fill(mark, 0);
+			Arrays.fill(edgeMark, 0);
+		}
+
+		void seed(int[] sources, int from, int to, int epoch) {
+			for (int i = 0; i < usedCount; i++) {
+				sizes[used[i]] = 0;
+			}
+			usedCount = 0;
+			pending = 0;
+			current = Integer.MAX_VALUE;
+			seeded = 0;
+			chainSources = 0;
+			for (int i = from; i < to; i++) {
+				int s = sources[i];
+				int r = c.reduced[s];
+				int d = 0;
+				if (r < 0) {
+					int e = c.chainEdge[s];
+					addChainSource((long) e << 32 | c.down[s], s);
+					edgeMark[e] = epoch;
+					r = c.targets[e];
+					d = c.up[s];
+				}
+				if (mark[r] != epoch || d < dist[r]) {
+					if (mark[r] != epoch) {
+						if (seeded == seeds.length) {
+							seeds = Arrays.copyOf(seeds, seeded * 2);
+						}
+						seeds[seeded++] = r;
+					}
+					push(r, d, epoch);
+					current = Math.min(current, d);
+				}
+			}
+		}
+
+		// Inserts a chain source keeping the keys sorted; sources are few.
+		private void addChainSource(long key, int vertex) {
+			if (chainSources == chainKey.length) {
+				chainKey = Arrays.copyOf(chainKey, chainSources * 2);
+				chainVertex = Arrays.copyOf(chainVertex, chainSources * 2);
+			}
+			int k = chainSources++;
+			while (k > 0 && chainKey[k - 1] > key) {
+				chainKey[k] = chainKey[k - 1];
+				chainVertex[k] = chainVertex[k - 1];
+				k--;
+			}
+			chainKey[k] = key;
+			chainVertex[k] = vertex;
+		}
+
+		void push(int r, int d, int epoch) {
+			mark[r] = epoch;
+			dist[r] = d;
+			int b = d % buckets.length;
+			if (sizes[b] == 0) {
+				if (buckets[b] == null) {
+					buckets[b] = new int[4];
+				}
+				if (usedCount == used.length) {
+					used = Arrays.copyOf(used, usedCount * 2);
+				}
+				used[usedCount++] = b;
+			} else if (sizes[b] == buckets[b].length) {
+				buckets[b] = Arrays.copyOf(buckets[b], sizes[b] * 2);
+			}
+			buckets[b][sizes[b]++] = r;
+			pending++;
+		}
+
+		// Distance of the next non-empty bucket; MAX_VALUE once the side is exhausted.
+		int nextDistance() {
+			if (pending == 0) {
+				return Integer.MAX_VALUE;
+			}
+			while (sizes[current % sizes.length] == 0) {
+				current++;
+			}
+			return current;
+		}
+
+		int bucketSize() {
+			return sizes[current % sizes.length];
+		}
+	}
+
+}
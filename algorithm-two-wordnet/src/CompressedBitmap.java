@@ -0,0 +1,243 @@
+import java.util.Arrays;
+
+/**
+ * Immutable set of non-negative ints split Roaring style into containers by
+ * the high 16 bits of each value. A container holds the low 16 bits of its
+ * values as a sorted array, a 65536-bit bitset or a list of runs, whichever
+ * takes the fewest bytes, so sparse, dense and clustered sets all stay small.
+ */
+final class CompressedBitmap {
+
+	private static final byte ARRAY = 0;
+	private static final byte BITSET = 1;
+	private static final byte RUN = 2;
+	private static final int MAX_ARRAY = 4096; // Above this an array outgrows the 8 KB bitset.
+	private static final int BITSET_WORDS = 1024;
+
+	static final CompressedBitmap EMPTY = new CompressedBitmap(new char[0], new byte[0], new Object[0], 0);
+
+	private final char[] keys; // High 16 bits of every container, ascending.
+	private final byte[] kinds;
+	private final Object[] containers; // char[] values, long[] words, or char[] (start, length - 1) pairs.
+	private final int cardinality;
+
+	private CompressedBitmap(char[] keys, byte[] kinds, Object[] containers, int cardinality) {
+		this.keys = keys;
+		this.kinds = kinds;
+		this.containers = containers;
+		this.cardinality = cardinality;
+	}
+
+	/**
+	 * Encodes values[0..n), which must be sorted and distinct.
+	 */
+	static CompressedBitmap of(int[] values, int n) {
+		if (n == 0) {
+			return EMPTY;
+		}
+		int count = 1;
+		for (int i = 1; i < n; i++) {
+			if (values[i] >>> 16 != values[i - 1] >>> 16) {
+				count++;
+			}
+		}
+		char[] keys = new char[count];
+		byte[] kinds = new byte[count];
+		Object[] containers = new Object[count];
+		int c = 0;
+		for (int from = 0; from < n; c++) {
+			int high = values[from] >>> 16;
+			int to = from + 1;
+			int runs = 1;
+			while (to < n && values[to] >>> 16 == high) {
+				if (values[to] != values[to - 1] + 1) {
+					runs++;
+				}
+				to++;
+			}
+			keys[c] = (char) high;
+			int size = to - from;
+			if (4 * runs < 2 * size && 4 * runs < 8 * BITSET_WORDS) {
+				char[] pairs = new char[2 * runs];
+				int r = -1;
+				for (int i = from; i < to; i++) {
+					if (i == from || values[i] != values[i - 1] + 1) {
+						pairs[2 * ++r] = (char) values[i];
+					} else {
+						pairs[2 * r + 1]++;
+					}
+				}
+				kinds[c] = RUN;
+				containers[c] = pairs;
+			} else if (size <= MAX_ARRAY) {
+				char[] low = new char[size];
+				for (int i = from; i < to; i++) {
+					low[i - from] = (char) values[i];
+				}
+				kinds[c] = ARRAY;
+				containers[c] = low;
+			} else {
+				long[] words = new long[BITSET_WORDS];
+				for (int i = from; i < to; i++) {
+					words[(values[i] & 0xFFFF) >>> 6] |= 1L << values[i];
+				}
+				kinds[c] = BITSET;
+				containers[c] = words;
+			}
+			from = to;
+		}
+		return new CompressedBitmap(keys, kinds, containers, n);
+	}
+
+	int cardinality() {
+		return cardinality;
+	}
+
+	boolean contains(int value) {
+		int c = Arrays.binarySearch(keys, (char) (value >>> 16));
+		return c >= 0 && containsLow(kinds[c], containers[c], (char) value);
+	}
+
+	// The values in ascending order.
+	int[] toArray() {
+		int[] values = new int[cardinality];
+		int size = 0;
+		for (int c = 0; c < keys.length; c++) {
+			int high = keys[c] << 16;
+			for (char low : lows(kinds[c], containers[c])) {
+				values[size++] = high | low;
+			}
+		}
+		return values;
+	}
+
+	// The values in both bitmaps, ascending.
+	int[] and(CompressedBitmap other) {
+		int[] out = new int[Math.min(cardinality, other.cardinality)];
+		return Arrays.copyOf(out, and(other, out));
+	}
+
+	// Number of values in both bitmaps, without materializing them.
+	int andCardinality(CompressedBitmap other) {
+		return and(other, null);
+	}
+
+	// Writes the intersection to out unless it is null; returns its size.
+	private int and(CompressedBitmap other, int[] out) {
+		int size = 0;
+		int i = 0;
+		int j = 0;
+		while (i < keys.length && j < other.keys.length) {
+			if (keys[i] < other.keys[j]) {
+				i++;
+			} else if (keys[i] > other.keys[j]) {
+				j++;
+			} else {
+				int high = keys[i] << 16;
+				if (kinds[i] == BITSET && other.kinds[j] == BITSET) {
+					long[] a = (long[]) containers[i];
+					long[] b = (long[]) other.containers[j];
+					for (int w = 0; w < BITSET_WORDS; w++) {
+						long both = a[w] & b[w];
+						if (out == null) {
+							size += Long.bitCount(both);
+							continue;
+						}
+						while (both != 0) {
+							out[size++] = high | w << 6 | Long.numberOfTrailingZeros(both);
+							both &= both - 1;
+						}
+					}
+				} else {
+					// Walk the container that is not a bitset, probing the other.
+					boolean swap = kinds[i] == BITSET;
+					byte probeKind = swap ? kinds[i] : other.kinds[j];
+					Object probe = swap ? containers[i] : other.containers[j];
+					for (char low : swap ? lows(other.kinds[j], other.containers[j]) : lows(kinds[i], containers[i])) {
+						if (containsLow(probeKind, probe, low)) {
+							if (out != null) {
+								out[size] = high | low;
+							}
+							size++;
+						}
+					}
+				}
+				i++;
+				j++;
+			}
+		}
+		return size;
+	}
+
+	private static boolean containsLow(byte kind, Object container, char low) {
+		if (kind == ARRAY) {
+			return Arrays.binarySearch((char[]) container, low) >= 0;
+		}
+		if (kind == BITSET) {
+			return (((long[]) container)[low >>> 6] & 1L << low) != 0;
+		}
+		char[] pairs = (char[]) container;
+		int lo = 0;
+		int hi = pairs.length / 2 - 1;
+		while (lo <= hi) { // Last run starting at or below low.
+			int mid = (lo + hi) >>> 1;
+			if (pairs[2 * mid] <= low) {
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return hi >= 0 && low - pairs[2 * hi] <= pairs[2 * hi + 1];
+	}
+
+	// The low halves held by a container, ascending.
+	private static char[] lows(byte kind, Object container) {
+		if (kind == ARRAY) {
+			return (char[]) container;
+		}
+		int size = 0;
+		if (kind == BITSET) {
+			long[] words = (long[]) container;
+			for (long word : words) {
+				size += Long.bitCount(word);
+			}
+			char[] lows = new char[size];
+			size = 0;
+			for (int w = 0; w < BITSET_WORDS; w++) {
+				for (long bits = words[w]; bits != 0; bits &= bits - 1) {
+					lows[size++] = (char) (w << 6 | Long.numberOfTrailingZeros(bits));
+				}
+			}
+			return lows;
+		}
+		char[] pairs = (char[]) container;
+		for (int r = 0; r < pairs.length; r += 2) {
+			size += pairs[r + 1] + 1;
+		}
+		char[] lows = new char[size];
+		size = 0;
+		for (int r = 0; r < pairs.length; r += 2) {
+			for (int k = 0; k <= pairs[r + 1]; k++) {
+				lows[size++] = (char) (pairs[r] + k);
+			}
+		}
+		return lows;
+	}
+
+	// Number of containers of each kind: [arrays, bitsets, runs].
+	void countContainers(long[] counts) {
+		for (byte kind : kinds) {
+			counts[kind]++;
+		}
+	}
+
+	// Approximate heap bytes, object headers included.
+	long memoryBytes() {
+		long bytes = 24 + (16 + 2L * keys.length) + (16 + keys.length) + (16 + 4L * keys.length);
+		for (int c = 0; c < keys.length; c++) {
+			bytes += 16 + (kinds[c] == BITSET ? 8L * BITSET_WORDS : 2L * ((char[]) containers[c]).length);
+		}
+		return bytes;
+	}
+
+}
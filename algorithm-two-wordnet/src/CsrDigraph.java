@@ -0,0 +1,187 @@
+import java.util.Arrays;
+
+import edu.princeton.cs.algs4.Digraph;
+
+/**
+ * Immutable digraph in compressed sparse row form. The successors of vertex v
+ * are targets[offsets[v]] .. targets[offsets[v + 1] - 1], so walking the graph
+ * touches two flat int arrays and never boxes a vertex.
+ */
+public class CsrDigraph {
+
+	private final int V;
+	final int[] offsets; // offsets[v] = index in targets of v's first successor, offsets[V] = E.
+	final int[] targets; // Successors of all vertices, grouped by source vertex.
+
+	/**
+	 * Copies an algs4 digraph into CSR form.
+	 *
+	 * @param G the digraph to copy
+	 */
+	public CsrDigraph(Digraph G) {
+		V = G.V();
+		offsets = new int[V + 1];
+		for (int v = 0; v < V; v++) {
+			offsets[v + 1] = offsets[v] + G.outdegree(v);
+		}
+		targets = new int[offsets[V]];
+		for (int v = 0; v < V; v++) {
+			int i = offsets[v];
+			for (int w : G.adj(v)) {
+				targets[i++] = w;
+			}
+		}
+	}
+
+	/**
+	 * Builds the CSR form from parallel edge arrays.
+	 *
+	 * @param V    number of vertices
+	 * @param from from[i] is the source of edge i
+	 * @param to   to[i] is the target of edge i
+	 * @param E    number of edges used from the two arrays
+	 */
+	CsrDigraph(int V, int[] from, int[] to, int E) {
+		this.V = V;
+		offsets = new int[V + 1];
+		for (int i = 0; i < E; i++) {
+			offsets[from[i] + 1]++;
+		}
+		for (int v = 0; v < V; v++) {
+			offsets[v + 1] += offsets[v];
+		}
+		targets = new int[E];
+		int[] next = Arrays.copyOf(offsets, V);
+		for (int i = 0; i < E; i++) {
+			targets[next[from[i]]++] = to[i];
+		}
+	}
+
+	/**
+	 * Wraps existing CSR arrays without copying them.
+	 *
+	 * @param V       number of vertices
+	 * @param offsets V + 1 row offsets into targets
+	 * @param targets successors of all vertices, grouped by source vertex
+	 */
+	CsrDigraph(int V, int[] offsets, int[] targets) {
+		this.V = V;
+		this.offsets = offsets;
+		this.targets = targets;
+	}
+
+	/**
+	 * Returns the digraph with every edge reversed.
+	 */
+	public CsrDigraph reverse() {
+		return new CsrDigraph(this);
+	}
+
+	// Builds the reverse of g.
+	private CsrDigraph(CsrDigraph g) {
+		V = g.V;
+		offsets = new int[V + 1];
+		for (int w : g.targets) {
+			offsets[w + 1]++;
+		}
+		for (int v = 0; v < V; v++) {
+			offsets[v + 1] += offsets[v];
+		}
+		targets = new int[g.targets.length];
+		int[] next = Arrays.copyOf(offsets, V);
+		for (int v = 0; v < V; v++) {
+			for (int i = g.offsets[v]; i < g.offsets[v + 1]; i++) {
+				targets[next[g.targets[i]]++] = v;
+			}
+		}
+	}
+
+	/**
+	 * Returns a copy of the digraph with V vertices and the given edges added.
+	 * The rows between two sources of new edges are copied as one block, so
+	 * the cost is two array copies and the original stays valid for anyone
+	 * still reading it.
+	 *
+	 * @param V    number of vertices, at least the current number
+	 * @param from from[i] is the source of new edge i
+	 * @param to   to[i] is the target of new edge i
+	 */
+	CsrDigraph withEdges(int V, int[] from, int[] to) {
+		long[] bySource = new long[from.length]; // (source << 32 | i), so edges keep their order per source.
+		for (int i = 0; i < from.length; i++) {
+			bySource[i] = (long) from[i] << 32 | i;
+		}
+		Arrays.sort(bySource);
+		int[] newOffsets = new int[V + 1];
+		int shift = 0;
+		for (int v = 0; v < V; v++) {
+			while (shift < bySource.length && (int) (bySource[shift] >>> 32) == v) {
+				shift++;
+			}
+			newOffsets[v + 1] = (v < this.V ? offsets[v + 1] : targets.length) + shift;
+		}
+		int[] newTargets = new int[targets.length + from.length];
+		int copied = 0;
+		int size = 0;
+		for (long edge : bySource) {
+			int v = (int) (edge >>> 32);
+			int rowEnd = v < this.V ? offsets[v + 1] : targets.length;
+			System.arraycopy(targets, copied, newTargets, size, rowEnd - copied);
+			size += rowEnd - copied;
+			copied = rowEnd;
+			newTargets[size++] = to[(int) edge];
+		}
+		System.arraycopy(targets, copied, newTargets, size, targets.length - copied);
+		return new CsrDigraph(V, newOffsets, newTargets);
+	}
+
+	/**
+	 * Returns the vertices in topological order (every edge v->w has v before
+	 * w) using Kahn's in-degree algorithm, or null if the digraph has a cycle.
+	 */
+	public int[] topologicalOrder() {
+		int[] indegree = new int[V];
+		for (int w : targets) {
+			indegree[w]++;
+		}
+		int[] order = new int[V];
+		int tail = 0;
+		for (int v = 0; v < V; v++) {
+			if (indegree[v] == 0) {
+				order[tail++] = v;
+			}
+		}
+		for (int head = 0; head < tail; head++) {
+			int v = order[head];
+			for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+				if (--indegree[targets[i]] == 0) {
+					order[tail++] = targets[i];
+				}
+			}
+		}
+		return tail == V ? order : null;
+	}
+
+	public int V() {
+		return V;
+	}
+
+	public int E() {
+		return targets.length;
+	}
+
+	public int outdegree(int v) {
+		return offsets[v + 1] - offsets[v];
+	}
+
+	// Whether v has an edge to w.
+	boolean hasEdge(int v, int w) {
+		for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+			if (targets[i] == w) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,88 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative long values with HDR-style log-linear
+ * buckets.
+ * <p>
+ * Values below 2^SUB_BUCKET_BITS get a bucket each. Above that, every power
+ * of two range [2^k, 2^(k+1)) is split into 2^SUB_BUCKET_BITS equal buckets,
+ * so a reported value is within 1% of the recorded one whatever its
+ * magnitude, and the whole long range fits in a few thousand counters.
+ * Recording is one atomic increment; readers scan the counters.
+ */
+class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+
+	// Bucket of a value: its top SUB_BUCKET_BITS + 1 bits and its magnitude.
+	private static int index(long value) {
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		if (shift < 0) {
+			return (int) value;
+		}
+		return ((shift + 1) << SUB_BUCKET_BITS) + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+
+	// Largest value that falls in bucket i.
+	private static long highest(int i) {
+		if (i < SUB_BUCKETS) {
+			return i;
+		}
+		int shift = (i >> SUB_BUCKET_BITS) - 1;
+		long sub = SUB_BUCKETS + (i & (SUB_BUCKETS - 1));
+		return ((sub + 1) << shift) - 1;
+	}
+
+	void record(long value) {
+		counts.incrementAndGet(index(Math.max(0, value)));
+	}
+
+	long count() {
+		long count = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the value at or below which p percent of the recorded values
+	 * fall, to within the bucket precision; 0 if nothing was recorded.
+	 */
+	long percentile(double p) {
+		long[] snapshot = new long[counts.length()];
+		long count = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = counts.get(i);
+			count += snapshot[i];
+		}
+		long rank = Math.max(1, (long) Math.ceil(p / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return highest(i);
+			}
+		}
+		return 0;
+	}
+
+	long max() {
+		for (int i = counts.length() - 1; i >= 0; i--) {
+			if (counts.get(i) != 0) {
+				return highest(i);
+			}
+		}
+		return 0;
+	}
+
+	void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+	}
+
+}
@@ -0,0 +1,268 @@
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntPredicate;
+
+/**
+ * Cache of the ancestor labels of the most frequently queried keys, vertices
+ * in SAP and nouns in WordNet.
+ * <p>
+ * A pair cache misses whenever a popular endpoint meets a new partner; a
+ * cached label still answers its side of the query. Every key has an access
+ * counter, halved after about 8 accesses per key so popularity fades, and a
+ * key is admitted only once it has been seen MIN_FREQUENCY times and is more
+ * popular than the least popular key it would evict. One-off keys therefore
+ * never push out hot ones.
+ * <p>
+ * Lookups are lock-free; admission and eviction take the cache's lock.
+ */
+public class HotLabelCache {
+
+	private static final int MIN_FREQUENCY = 2;
+	private static final int AGE_PERIOD = 8; // Counters are halved after this many accesses per key.
+
+	private final int capacity;
+	private AtomicReferenceArray<AncestorLabel> labels; // labels[key] = cached label, or null.
+	private AtomicIntegerArray frequency; // Aged access counts per key.
+	private int keys; // Keys run from 0 to keys - 1; the arrays may be longer.
+	private final LongAdder accesses = new LongAdder(); // Since the counters were last halved.
+	private final int[] members; // Cached keys; guarded by this.
+	private volatile int size; // Written under the lock, read by admits() without it.
+	private volatile int coldest; // Frequency of the least popular member when the cache is full.
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private long admissions;
+	private long evictions;
+
+	/**
+	 * Creates an empty cache.
+	 *
+	 * @param capacity maximum number of labels kept
+	 * @param keys     keys run from 0 to keys - 1
+	 */
+	public HotLabelCache(int capacity, int keys) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Cache capacity must be positive.");
+		}
+		this.capacity = capacity;
+		members = new int[capacity];
+		this.keys = keys;
+		labels = new AtomicReferenceArray<>(keys);
+		frequency = new AtomicIntegerArray(keys);
+	}
+
+	/**
+	 * Answers a query between keys a and b from their labels when either is
+	 * hot: with no traversal if both labels are cached, else with one BFS from
+	 * the other endpoint checked against the cached label. An endpoint hot
+	 * enough to be admitted first gets its label computed. Afterwards the
+	 * counters of local cover every BFS run here.
+	 *
+	 * @param a     first key, whose vertices are aIds[aFrom..aTo)
+	 * @param b     second key, whose vertices are bIds[bFrom..bTo)
+	 * @param local the calling thread's search scratch
+	 * @return the packed (ancestor, length), or {@link PairCache#MISS} if
+	 *         neither endpoint is hot
+	 */
+	long find(int a, int[] aIds, int aFrom, int aTo, int b, int[] bIds, int bFrom, int bTo, AncestralSearch local) {
+		int dequeued = 0;
+		int relaxed = 0;
+		AncestorLabel aLabel = get(a);
+		AncestorLabel bLabel = a == b ? aLabel : get(b);
+		if (aLabel == null && admits(a)) {
+			aLabel = local.label(aIds, aFrom, aTo);
+			dequeued += local.dequeued();
+			relaxed += local.relaxed();
+			put(a, aLabel);
+		}
+		if (bLabel == null && a == b) {
+			bLabel = aLabel;
+		} else if (bLabel == null && admits(b)) {
+			bLabel = local.label(bIds, bFrom, bTo);
+			dequeued += local.dequeued();
+			relaxed += local.relaxed();
+			put(b, bLabel);
+		}
+		long packed;
+		if (aLabel != null && bLabel != null) {
+			packed = AncestorLabel.meet(aLabel, bLabel);
+		} else if (aLabel != null || bLabel != null) {
+			packed = aLabel != null ? local.meet(bIds, bFrom, bTo, aLabel) : local.meet(aIds, aFrom, aTo, bLabel);
+			dequeued += local.dequeued();
+			relaxed += local.relaxed();
+		} else {
+			return PairCache.MISS;
+		}
+		local.setCounters(dequeued, relaxed);
+		return packed;
+	}
+
+	/**
+	 * Counts an access to key and returns its cached label, or null.
+	 */
+	AncestorLabel get(int key) {
+		if (key >= labels.length()) {
+			misses.increment();
+			return null;
+		}
+		int f = frequency.incrementAndGet(key);
+		accesses.increment();
+		// Summing the adder reads every thread's cell, so only a lookup taking
+		// its key's count to a power of two checks; aging may run a little late.
+		if (f >= AGE_PERIOD && (f & (f - 1)) == 0 && accesses.sum() > (long) AGE_PERIOD * keys) {
+			age();
+		}
+		AncestorLabel label = labels.get(key);
+		if (label == null) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return label;
+	}
+
+	/**
+	 * Whether a label for key would be admitted now, so the caller only
+	 * computes labels worth keeping. Without the lock this is an estimate;
+	 * {@link #put} makes the final decision.
+	 */
+	boolean admits(int key) {
+		if (key >= frequency.length()) {
+			return false;
+		}
+		int f = frequency.get(key);
+		return f >= MIN_FREQUENCY && (size < capacity || f > coldest);
+	}
+
+	/**
+	 * Caches the label of key, evicting the least popular member if the cache
+	 * is full and key is more popular.
+	 */
+	synchronized void put(int key, AncestorLabel label) {
+		if (key >= labels.length() || labels.get(key) != null) {
+			return;
+		}
+		int f = frequency.get(key);
+		if (size == capacity) {
+			int victim = coldestMember();
+			if (f <= frequency.get(members[victim])) {
+				return;
+			}
+			labels.set(members[victim], null);
+			members[victim] = members[--size];
+			evictions++;
+		}
+		members[size++] = key;
+		labels.set(key, label);
+		admissions++;
+		coldest = size == capacity ? frequency.get(members[coldestMember()]) : 0;
+	}
+
+	// Index in members of the least popular cached key.
+	private int coldestMember() {
+		int victim = 0;
+		for (int i = 1; i < size; i++) {
+			if (frequency.get(members[i]) < frequency.get(members[victim])) {
+				victim = i;
+			}
+		}
+		return victim;
+	}
+
+	// Halves every counter so old popularity fades; concurrent increments may be lost.
+	private synchronized void age() {
+		if (accesses.sum() <= (long) AGE_PERIOD * keys) {
+			return;
+		}
+		accesses.reset();
+		for (int key = 0; key < frequency.length(); key++) {
+			frequency.set(key, frequency.get(key) >> 1);
+		}
+		coldest = size == capacity ? frequency.get(members[coldestMember()]) : 0;
+	}
+
+	/**
+	 * Makes room for keys added since the cache was built, keeping every label
+	 * and counter. Must not run concurrently with lookups.
+	 *
+	 * @param keys keys now run from 0 to keys - 1
+	 */
+	synchronized void grow(int keys) {
+		if (keys <= this.keys) {
+			return;
+		}
+		this.keys = keys;
+		if (keys <= labels.length()) {
+			return;
+		}
+		// Doubling keeps a run of single additions amortized O(1) each.
+		int size = Math.max(keys, 2 * labels.length());
+		AtomicReferenceArray<AncestorLabel> grownLabels = new AtomicReferenceArray<>(size);
+		AtomicIntegerArray grownFrequency = new AtomicIntegerArray(size);
+		for (int key = 0; key < labels.length(); key++) {
+			grownLabels.set(key, labels.get(key));
+			grownFrequency.set(key, frequency.get(key));
+		}
+		labels = grownLabels;
+		frequency = grownFrequency;
+	}
+
+	/**
+	 * Drops the cached labels of the keys a graph update changed, keeping the
+	 * access counters so the keys are admitted again as soon as they are
+	 * queried. Only members are tested, so the cost is bounded by the
+	 * capacity.
+	 *
+	 * @param stale whether the label of a cached key is out of date
+	 */
+	synchronized void invalidate(IntPredicate stale) {
+		for (int i = 0; i < size; i++) {
+			if (stale.test(members[i])) {
+				labels.set(members[i], null);
+				members[i--] = members[--size];
+			}
+		}
+		coldest = size == capacity ? frequency.get(members[coldestMember()]) : 0;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	public long hits() {
+		return hits.sum();
+	}
+
+	public long misses() {
+		return misses.sum();
+	}
+
+	public synchronized long admissions() {
+		return admissions;
+	}
+
+	public synchronized long evictions() {
+		return evictions;
+	}
+
+	// Approximate heap bytes held by the cached labels.
+	public synchronized long memoryBytes() {
+		long bytes = 0;
+		for (int i = 0; i < size; i++) {
+			bytes += 8L * labels.get(members[i]).size() + 3 * 16;
+		}
+		return bytes;
+	}
+
+	@Override
+	public String toString() {
+		return "HotLabelCache[size=" + size() + "/" + capacity + ", hits=" + hits() + ", misses=" + misses()
+				+ ", admissions=" + admissions() + ", evictions=" + evictions() + ", bytes=" + memoryBytes() + "]";
+	}
+
+}
@@ -0,0 +1,80 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * A fixed-length array of ints, either an int[] on the heap or an IntBuffer,
+ * so that {@link AncestralSearch} is written once for graphs and scratch in
+ * either place.
+ * <p>
+ * A final class that tests which of the two it holds rather than an interface
+ * with two implementations: the test is one predictable branch, where a call
+ * site that saw both implementations would pay a type check on every element.
+ */
+final class IntArray {
+
+	private final int[] heap; // Null if the ints are in the buffer.
+	private final IntBuffer buffer;
+
+	private IntArray(int[] heap, IntBuffer buffer) {
+		this.heap = heap;
+		this.buffer = buffer;
+	}
+
+	static IntArray of(int[] a) {
+		return new IntArray(a, null);
+	}
+
+	static IntArray of(IntBuffer b) {
+		return new IntArray(null, b);
+	}
+
+	// A zeroed heap array of the given length.
+	static IntArray heap(int length) {
+		return of(new int[length]);
+	}
+
+	// A zeroed array of the given length outside the heap.
+	static IntArray direct(int length) {
+		return of(ByteBuffer.allocateDirect(4 * length).order(ByteOrder.nativeOrder()).asIntBuffer());
+	}
+
+	int get(int i) {
+		return heap != null ? heap[i] : buffer.get(i);
+	}
+
+	void set(int i, int value) {
+		if (heap != null) {
+			heap[i] = value;
+		} else {
+			buffer.put(i, value);
+		}
+	}
+
+	int length() {
+		return heap != null ? heap.length : buffer.capacity();
+	}
+
+	// Sets every element to value.
+	void fill(int value) {
+		if (heap != null) {
+			Arrays.fill(heap, value);
+		} else {
+			for (int i = 0; i < buffer.capacity(); i++) {
+				buffer.put(i, value);
+			}
+		}
+	}
+
+	// A new heap array holding elements [0..to).
+	int[] copyOf(int to) {
+		if (heap != null) {
+			return Arrays.copyOf(heap, to);
+		}
+		int[] a = new int[to];
+		buffer.get(0, a);
+		return a;
+	}
+
+}
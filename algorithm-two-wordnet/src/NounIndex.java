@@ -0,0 +1,343 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Maps every WordNet noun to all of the synsets that contain it.
+ * <p>
+ * Noun n's UTF-8 bytes are arena[nounStart[n]..nounStart[n + 1]) and its
+ * synsets are synsets[synsetStart[n]..synsetStart[n + 1]) in increasing order.
+ * A noun is found through an open-addressing table of noun ordinals (plus one,
+ * zero marks an empty slot) hashed on the noun bytes, so the index holds a
+ * handful of arrays instead of a String and a boxed Integer per noun.
+ * <p>
+ * Synsets added after the index was built are kept in a small per-noun
+ * overlay, and new nouns are appended to the arena and table in place;
+ * {@link #compact()} folds both back into the flat layout.
+ */
+class NounIndex {
+
+	byte[] arena;
+	int[] nounStart;
+	final int[] synsets;
+	int[] synsetStart;
+	int[] table;
+	private int count;
+	private int[][] added; // added[n] = synsets given to noun n by add(), in increasing order; null if none.
+
+	NounIndex(byte[] arena, int[] nounStart, int[] synsets, int[] synsetStart, int[] table) {
+		this.arena = arena;
+		this.nounStart = nounStart;
+		this.synsets = synsets;
+		this.synsetStart = synsetStart;
+		this.table = table;
+		count = nounStart.length - 1;
+	}
+
+	// Number of distinct nouns.
+	int count() {
+		return count;
+	}
+
+	// Ordinal of the noun, or -1 if it is not in the index.
+	int find(String noun) {
+		if (noun == null) {
+			return -1;
+		}
+		// An ASCII noun's chars are its UTF-8 bytes, so it is probed without
+		// encoding it; only other nouns pay for a byte copy.
+		int h = 0;
+		for (int i = 0; i < noun.length(); i++) {
+			char c = noun.charAt(i);
+			if (c >= 0x80) {
+				byte[] bytes = noun.getBytes(StandardCharsets.UTF_8);
+				return probe(table, arena, nounStart, bytes, 0, bytes.length);
+			}
+			h = 31 * h + c;
+		}
+		int mask = table.length - 1;
+		for (int slot = (h ^ (h >>> 16)) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+			int n = table[slot] - 1;
+			if (nounStart[n + 1] - nounStart[n] == noun.length() && matches(nounStart[n], noun)) {
+				return n;
+			}
+		}
+		return -1;
+	}
+
+	// Whether the arena bytes at from spell the ASCII noun.
+	private boolean matches(int from, String noun) {
+		for (int i = 0; i < noun.length(); i++) {
+			if (arena[from + i] != noun.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// The synsets containing noun n, as a new array.
+	int[] synsetsOf(int n) {
+		int[] extra = added(n);
+		if (extra == null) {
+			return Arrays.copyOfRange(synsets, synsetStart[n], synsetStart[n + 1]);
+		}
+		int base = synsetStart[n + 1] - synsetStart[n];
+		int[] all = Arrays.copyOfRange(synsets, synsetStart[n], synsetStart[n + 1] + extra.length);
+		System.arraycopy(extra, 0, all, base, extra.length);
+		return all;
+	}
+
+	/**
+	 * The array holding noun n's synsets at [synsetFrom(n), synsetTo(n)), so
+	 * queries read them without copying. It is the shared synsets array unless
+	 * synsets were added to n, in which case it is a merged copy; callers must
+	 * not modify it.
+	 */
+	int[] synsetIds(int n) {
+		return added(n) == null ? synsets : synsetsOf(n);
+	}
+
+	// Start of noun n's synsets in synsetIds(n).
+	int synsetFrom(int n) {
+		return added(n) == null ? synsetStart[n] : 0;
+	}
+
+	// End of noun n's synsets in synsetIds(n), exclusive.
+	int synsetTo(int n) {
+		int[] extra = added(n);
+		return extra == null ? synsetStart[n + 1] : synsetStart[n + 1] - synsetStart[n] + extra.length;
+	}
+
+	// Synsets given to noun n by add(); null if none.
+	private int[] added(int n) {
+		return added == null || n >= added.length ? null : added[n];
+	}
+
+	/**
+	 * Records that noun belongs to synset, appending the noun if it is new.
+	 * Synset must be larger than every synset already indexed, as a newly
+	 * added synset is, so each noun's synsets stay in increasing order.
+	 */
+	void add(String noun, int synset) {
+		byte[] bytes = noun.getBytes(StandardCharsets.UTF_8);
+		int n = probe(table, arena, nounStart, bytes, 0, bytes.length);
+		if (n < 0) {
+			n = append(bytes);
+		}
+		if (added == null || added.length <= n) {
+			added = Arrays.copyOf(added == null ? new int[0][] : added, Math.max(n + 1, count));
+		}
+		int[] extra = added[n];
+		if (extra == null) {
+			added[n] = new int[] { synset };
+		} else if (extra[extra.length - 1] != synset) {
+			extra = Arrays.copyOf(extra, extra.length + 1);
+			extra[extra.length - 1] = synset;
+			added[n] = extra;
+		}
+	}
+
+	// Appends a noun with no synsets yet and returns its ordinal.
+	private int append(byte[] bytes) {
+		int from = nounStart[count];
+		if (arena.length < from + bytes.length) {
+			arena = Arrays.copyOf(arena, Math.max(from + bytes.length, arena.length + (arena.length >> 1)));
+		}
+		System.arraycopy(bytes, 0, arena, from, bytes.length);
+		int n = count++;
+		if (nounStart.length <= count) {
+			nounStart = Arrays.copyOf(nounStart, count + (count >> 1) + 1);
+			synsetStart = Arrays.copyOf(synsetStart, nounStart.length);
+		}
+		nounStart[count] = from + bytes.length;
+		synsetStart[count] = synsetStart[n];
+		if (count * 2 > table.length) {
+			table = rehash(table.length * 2, arena, nounStart, count);
+		} else {
+			place(table, arena, nounStart, n);
+		}
+		return n;
+	}
+
+	/**
+	 * Returns an index with the same contents in exactly sized flat arrays,
+	 * or this index if nothing was added to it.
+	 */
+	NounIndex compact() {
+		if (added == null && nounStart.length == count + 1 && arena.length == nounStart[count]) {
+			return this;
+		}
+		int[] compactStart = new int[count + 1];
+		int total = synsetStart[count];
+		for (int n = 0; added != null && n < added.length; n++) {
+			total += added[n] == null ? 0 : added[n].length;
+		}
+		int[] compactSynsets = new int[total];
+		int size = 0;
+		for (int n = 0; n < count; n++) {
+			compactStart[n] = size;
+			int[] senses = synsetsOf(n);
+			System.arraycopy(senses, 0, compactSynsets, size, senses.length);
+			size += senses.length;
+		}
+		compactStart[count] = size;
+		return new NounIndex(Arrays.copyOf(arena, nounStart[count]), Arrays.copyOf(nounStart, count + 1),
+				compactSynsets, compactStart, table);
+	}
+
+	String noun(int n) {
+		return new String(arena, nounStart[n], nounStart[n + 1] - nounStart[n], StandardCharsets.UTF_8);
+	}
+
+	// Every noun, decoded as it is iterated.
+	Iterable<String> nouns() {
+		return () -> new Iterator<String>() {
+			private int n;
+
+			@Override
+			public boolean hasNext() {
+				return n < count;
+			}
+
+			@Override
+			public String next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return noun(n++);
+			}
+		};
+	}
+
+	// Approximate heap bytes held by the index arrays.
+	long memoryBytes() {
+		long bytes = arena.length + 4L * (nounStart.length + synsets.length + synsetStart.length + table.length)
+				+ 5 * 16;
+		if (added != null) {
+			bytes += 4L * added.length + 16;
+			for (int[] extra : added) {
+				bytes += extra == null ? 0 : 4L * extra.length + 16;
+			}
+		}
+		return bytes;
+	}
+
+	static int hash(byte[] bytes, int off, int len) {
+		int h = 0;
+		for (int i = off; i < off + len; i++) {
+			h = 31 * h + bytes[i];
+		}
+		return h ^ (h >>> 16);
+	}
+
+	// Ordinal of the noun bytes in the table, or -1.
+	private static int probe(int[] table, byte[] arena, int[] nounStart, byte[] bytes, int off, int len) {
+		int mask = table.length - 1;
+		for (int slot = hash(bytes, off, len) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+			int n = table[slot] - 1;
+			if (Arrays.equals(arena, nounStart[n], nounStart[n + 1], bytes, off, off + len)) {
+				return n;
+			}
+		}
+		return -1;
+	}
+
+	private static int[] rehash(int size, byte[] arena, int[] nounStart, int count) {
+		int[] resized = new int[size];
+		for (int n = 0; n < count; n++) {
+			place(resized, arena, nounStart, n);
+		}
+		return resized;
+	}
+
+	// Stores ordinal n in the first free slot of its probe sequence.
+	private static void place(int[] into, byte[] arena, int[] nounStart, int n) {
+		int mask = into.length - 1;
+		int slot = hash(arena, nounStart[n], nounStart[n + 1] - nounStart[n]) & mask;
+		while (into[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		into[slot] = n + 1;
+	}
+
+	/**
+	 * Collects (noun, synset) pairs. Noun bytes are copied into the arena the
+	 * first time a noun is seen and its synsets are chained through posting
+	 * lists until {@link #build()} lays them out contiguously.
+	 */
+	static class Builder {
+		private byte[] arena = new byte[1 << 16];
+		private int arenaSize;
+		private int[] nounStart = new int[1025];
+		private int count;
+		private int[] table = new int[2048];
+		private int[] lastPosting = new int[1024]; // lastPosting[n] = newest posting of noun n.
+		private int[] postingSynset = new int[1024];
+		private int[] postingNext = new int[1024]; // Older posting of the same noun, or -1.
+		private int postings;
+
+		// Records that the noun in bytes[off..off + len) belongs to synset.
+		void add(byte[] bytes, int off, int len, int synset) {
+			int n = probe(table, arena, nounStart, bytes, off, len);
+			if (n < 0) {
+				n = insert(bytes, off, len);
+			}
+			if (postings == postingSynset.length) {
+				postingSynset = Arrays.copyOf(postingSynset, postings * 2);
+				postingNext = Arrays.copyOf(postingNext, postings * 2);
+			}
+			postingSynset[postings] = synset;
+			postingNext[postings] = lastPosting[n];
+			lastPosting[n] = postings++;
+		}
+
+		private int insert(byte[] bytes, int off, int len) {
+			if (arena.length < arenaSize + len) {
+				arena = Arrays.copyOf(arena, Math.max(arenaSize + len, arena.length * 2));
+			}
+			System.arraycopy(bytes, off, arena, arenaSize, len);
+			arenaSize += len;
+			int n = count++;
+			if (nounStart.length <= count) {
+				nounStart = Arrays.copyOf(nounStart, count * 2);
+			}
+			if (lastPosting.length <= n) {
+				lastPosting = Arrays.copyOf(lastPosting, count * 2);
+			}
+			nounStart[count] = arenaSize;
+			lastPosting[n] = -1;
+			if (count * 2 > table.length) {
+				table = rehash(table.length * 2, arena, nounStart, count);
+			} else {
+				place(table, arena, nounStart, n);
+			}
+			return n;
+		}
+
+		NounIndex build() {
+			int[] synsetStart = new int[count + 1];
+			int[] synsets = new int[postings];
+			int size = 0;
+			for (int n = 0; n < count; n++) {
+				synsetStart[n] = size;
+				for (int p = lastPosting[n]; p >= 0; p = postingNext[p]) {
+					synsets[size++] = postingSynset[p];
+				}
+				Arrays.sort(synsets, synsetStart[n], size);
+				// Drop a synset listed twice for the same noun.
+				int unique = synsetStart[n];
+				for (int i = synsetStart[n]; i < size; i++) {
+					if (i == synsetStart[n] || synsets[i] != synsets[i - 1]) {
+						synsets[unique++] = synsets[i];
+					}
+				}
+				size = unique;
+			}
+			synsetStart[count] = size;
+			return new NounIndex(Arrays.copyOf(arena, arenaSize), Arrays.copyOf(nounStart, count + 1),
+					Arrays.copyOf(synsets, size), synsetStart, table);
+		}
+	}
+
+}
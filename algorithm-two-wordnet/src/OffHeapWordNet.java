@@ -0,0 +1,345 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A read-only WordNet whose hypernym graph, hyponym graph, synset text and
+ * noun index all live outside the Java heap.
+ * <p>
+ * The data stays in the {@link WordNetSnapshot} layout, either in a mapped
+ * snapshot file or in a direct buffer encoded from the text files, and is
+ * read in place through buffer views; the hyponym graph is built next to it
+ * in direct buffers. Each querying thread's BFS scratch is direct as well, so
+ * the heap holds a few dozen objects whatever the size of the taxonomy and
+ * the collector never scans or copies the graph.
+ */
+public class OffHeapWordNet implements WordNetQueries {
+
+	private final static String path = "resources/wordnet/";
+
+	private final int V;
+	private final int nounCount;
+	private final ByteBuffer data; // The whole snapshot.
+	private final IntBuffer offsets; // Hypernym edges in CSR form.
+	private final IntBuffer targets;
+	private final IntArray downOffsets; // Hyponym edges in CSR form.
+	private final IntArray downTargets;
+	private final IntBuffer synsetOffsets; // Synset v's text is synsetArena[synsetOffsets[v]..synsetOffsets[v + 1]).
+	private final ByteBuffer synsetArena;
+	private final IntBuffer nounStart; // As in NounIndex.
+	private final IntBuffer synsetStart;
+	private final IntBuffer synsets;
+	private final IntBuffer table;
+	private final ByteBuffer nounArena;
+	private final ThreadLocal<AncestralSearch> search;
+
+	/**
+	 * Parses and validates the WordNet files and copies the result outside
+	 * the heap; the parsed heap copy is garbage once this returns.
+	 *
+	 * @param synsets   Name for file containing list of synsets.
+	 * @param hypernyms Name for file containing list of relationships.
+	 */
+	public OffHeapWordNet(String synsets, String hypernyms) {
+		this(WordNetSnapshot.checkHeader(encode(synsets, hypernyms), synsets));
+	}
+
+	// Loads, validates and lays out the files in a direct buffer.
+	private static ByteBuffer encode(String synsets, String hypernyms) {
+		WordNetLoader loaded = WordNetLoader.load(synsets, hypernyms);
+		WordNet.validate(loaded.g);
+		return WordNetSnapshot.encode(loaded.g, loaded.synset, loaded.nouns, true);
+	}
+
+	/**
+	 * Maps a file written by {@link WordNet#writeSnapshot(Path)} and answers
+	 * queries straight from the mapping.
+	 *
+	 * @param file the snapshot file
+	 * @return the off-heap WordNet
+	 * @throws IOException if the file cannot be read
+	 * @throws IllegalArgumentException if the file is not a snapshot or its
+	 *                                  header does not match its length
+	 */
+	public static OffHeapWordNet open(Path file) throws IOException {
+		return new OffHeapWordNet(WordNetSnapshot.map(file));
+	}
+
+	// Views the sections of a snapshot positioned after its version.
+	private OffHeapWordNet(ByteBuffer buf) {
+		V = buf.getInt();
+		int E = buf.getInt();
+		int synsetBytes = buf.getInt();
+		nounCount = buf.getInt();
+		int nounBytes = buf.getInt();
+		int nounSynsets = buf.getInt();
+		int tableSize = buf.getInt();
+		data = buf;
+
+		int at = buf.position();
+		offsets = ints(buf, at, V + 1);
+		targets = ints(buf, at += 4 * (V + 1), E);
+		synsetOffsets = ints(buf, at += 4 * E, V + 1);
+		nounStart = ints(buf, at += 4 * (V + 1), nounCount + 1);
+		synsetStart = ints(buf, at += 4 * (nounCount + 1), nounCount + 1);
+		synsets = ints(buf, at += 4 * (nounCount + 1), nounSynsets);
+		table = ints(buf, at += 4 * nounSynsets, tableSize);
+		synsetArena = buf.slice(at += 4 * tableSize, synsetBytes);
+		nounArena = buf.slice(at + synsetBytes, nounBytes);
+
+		// Reverse the hypernym edges into direct buffers.
+		downOffsets = IntArray.direct(V + 1);
+		for (int i = 0; i < E; i++) {
+			int w = targets.get(i);
+			downOffsets.set(w + 1, downOffsets.get(w + 1) + 1);
+		}
+		for (int v = 0; v < V; v++) {
+			downOffsets.set(v + 1, downOffsets.get(v + 1) + downOffsets.get(v));
+		}
+		downTargets = IntArray.direct(E);
+		IntArray next = IntArray.direct(V);
+		for (int v = 0; v < V; v++) {
+			next.set(v, downOffsets.get(v));
+		}
+		for (int v = 0; v < V; v++) {
+			for (int i = offsets.get(v); i < offsets.get(v + 1); i++) {
+				int w = targets.get(i);
+				downTargets.set(next.get(w), v);
+				next.set(w, next.get(w) + 1);
+			}
+		}
+		IntArray up = IntArray.of(offsets);
+		IntArray upTargets = IntArray.of(targets);
+		search = ThreadLocal.withInitial(() -> new AncestralSearch(V, up, upTargets, IntArray::direct));
+	}
+
+	private static IntBuffer ints(ByteBuffer buf, int at, int count) {
+		return buf.slice(at, 4 * count).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+	}
+
+	@Override
+	public Iterable<String> nouns() {
+		return () -> new Iterator<String>() {
+			private int n;
+
+			@Override
+			public boolean hasNext() {
+				return n < nounCount;
+			}
+
+			@Override
+			public String next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				int from = nounStart.get(n);
+				return text(nounArena, from, nounStart.get(++n) - from);
+			}
+		};
+	}
+
+	@Override
+	public boolean isNoun(String word) {
+		return find(word) >= 0;
+	}
+
+	@Override
+	public int distance(String nounA, String nounB) {
+		int a = find(nounA);
+		int b = find(nounB);
+		if (a < 0 || b < 0) {
+			throw new IllegalArgumentException("Must pass wordnet nouns to distance()");
+		}
+		AncestralSearch local = search.get();
+		local.find(synsetsOf(a), synsetsOf(b));
+		return local.length();
+	}
+
+	@Override
+	public String sap(String nounA, String nounB) {
+		int a = find(nounA);
+		int b = find(nounB);
+		if (a < 0 || b < 0) {
+			throw new IllegalArgumentException("Must pass wordnet nouns to sap()");
+		}
+		AncestralSearch local = search.get();
+		local.find(synsetsOf(a), synsetsOf(b));
+		return synset(local.ancestor());
+	}
+
+	/**
+	 * Returns whether some sense of hyponym is a kind of some sense of
+	 * hypernym, as {@link WordNet#isHypernym(String, String)} does, with one
+	 * BFS up from the hyponym's synsets.
+	 *
+	 * @param hyponym  a WordNet noun
+	 * @param hypernym a WordNet noun
+	 * @return true if hyponym is-a hypernym
+	 */
+	@Override
+	public boolean isHypernym(String hyponym, String hypernym) {
+		int a = find(hyponym);
+		int b = find(hypernym);
+		if (a < 0 || b < 0) {
+			throw new IllegalArgumentException("Must pass wordnet nouns to isHypernym()");
+		}
+		AncestorLabel up = search.get().label(synsetsOf(a));
+		for (int v : synsetsOf(b)) {
+			if (Arrays.binarySearch(up.ids, v) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns every synset that is a hypernym of some sense of both nouns, as
+	 * {@link WordNet#commonHypernyms(String, String)} does, with one BFS up
+	 * from each noun.
+	 *
+	 * @param nounA a WordNet noun
+	 * @param nounB a WordNet noun
+	 * @return the common hypernym synsets in synset id order
+	 */
+	@Override
+	public List<String> commonHypernyms(String nounA, String nounB) {
+		List<String> common = new ArrayList<>();
+		for (int v : commonSynsets(nounA, nounB, "commonHypernyms()")) {
+			common.add(synset(v));
+		}
+		return common;
+	}
+
+	@Override
+	public int commonHypernymCount(String nounA, String nounB) {
+		return commonSynsets(nounA, nounB, "commonHypernymCount()").length;
+	}
+
+	// Ids of the common hypernyms of two nouns, ascending; query names the caller in errors.
+	private int[] commonSynsets(String nounA, String nounB, String query) {
+		int a = find(nounA);
+		int b = find(nounB);
+		if (a < 0 || b < 0) {
+			throw new IllegalArgumentException("Must pass wordnet nouns to " + query);
+		}
+		AncestralSearch local = search.get();
+		return AncestorLabel.common(local.label(synsetsOf(a)), local.label(synsetsOf(b)));
+	}
+
+	@Override
+	public AncestorLabel ancestorLabel(String noun) {
+		int n = find(noun);
+		if (n < 0) {
+			throw new IllegalArgumentException("Must pass wordnet nouns to ancestorLabel()");
+		}
+		return search.get().label(synsetsOf(n));
+	}
+
+	/**
+	 * Finds the k nouns closest to a noun by SAP distance, as
+	 * {@link WordNet#nearest(String, int)} does.
+	 *
+	 * @param noun a WordNet noun
+	 * @param k    number of nouns to return
+	 * @return up to k nouns other than noun, nearest first
+	 */
+	@Override
+	public List<String> nearest(String noun, int k) {
+		int n = find(noun);
+		if (n < 0) {
+			throw new IllegalArgumentException("Must pass wordnet nouns to nearest()");
+		}
+		if (k < 0) {
+			throw new IllegalArgumentException("k must not be negative.");
+		}
+		Set<String> nearest = new LinkedHashSet<>();
+		if (k == 0) {
+			return new ArrayList<>(nearest);
+		}
+		search.get().nearest(synsetsOf(n), downOffsets, downTargets, v -> {
+			for (String word : synset(v).split(" ")) {
+				if (!word.isEmpty() && !word.equals(noun) && nearest.add(word) && nearest.size() == k) {
+					return false;
+				}
+			}
+			return true;
+		});
+		return new ArrayList<>(nearest);
+	}
+
+	// Bytes held outside the heap by the snapshot and the hyponym graph.
+	public long offHeapBytes() {
+		return data.capacity() + 4L * (downOffsets.length() + downTargets.length());
+	}
+
+	@Override
+	public String toString() {
+		return "OffHeapWordNet[synsets=" + V + ", nouns=" + nounCount + ", offHeapBytes=" + offHeapBytes() + "]";
+	}
+
+	// Ordinal of the noun, or -1; the same probe as NounIndex over the buffers.
+	private int find(String noun) {
+		if (noun == null) {
+			return -1;
+		}
+		byte[] bytes = noun.getBytes(StandardCharsets.UTF_8);
+		int mask = table.capacity() - 1;
+		for (int slot = NounIndex.hash(bytes, 0, bytes.length) & mask; table.get(slot) != 0; slot = (slot + 1) & mask) {
+			int n = table.get(slot) - 1;
+			int from = nounStart.get(n);
+			if (nounStart.get(n + 1) - from == bytes.length && matches(from, bytes)) {
+				return n;
+			}
+		}
+		return -1;
+	}
+
+	private boolean matches(int from, byte[] bytes) {
+		for (int i = 0; i < bytes.length; i++) {
+			if (nounArena.get(from + i) != bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int[] synsetsOf(int n) {
+		int from = synsetStart.get(n);
+		int[] senses = new int[synsetStart.get(n + 1) - from];
+		synsets.get(from, senses);
+		return senses;
+	}
+
+	private String synset(int v) {
+		int from = synsetOffsets.get(v);
+		return text(synsetArena, from, synsetOffsets.get(v + 1) - from);
+	}
+
+	private static String text(ByteBuffer arena, int from, int length) {
+		byte[] bytes = new byte[length];
+		arena.get(from, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public static void main(String[] args) {
+		OffHeapWordNet wn = new OffHeapWordNet(path + "synsets.txt", path + "hypernyms.txt");
+		System.out.println(wn);
+		System.out.println(wn.distance("zucchini", "courgette"));
+		System.out.println(wn.distance("zucchini", "zymolysis"));
+		System.out.println(wn.sap("zucchini", "zymolysis"));
+		System.out.println(wn.nearest("zucchini", 10));
+		System.out.println(wn.isHypernym("zucchini", "vegetable"));
+		System.out.println(wn.commonHypernyms("zucchini", "zymolysis"));
+	}
+
+}
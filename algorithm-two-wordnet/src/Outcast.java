@@ -1,25 +1,63 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import edu.princeton.cs.algs4.In;
+
 public class Outcast {
 	private final static String path = "resources/wordnet/";
 
-	private final WordNet wn;
+	private final WordNetQueries wn;
+	private final boolean parallel; // Fill the distance matrix on several threads.
 
 	// constructor takes a WordNet object
-	public Outcast(WordNet wordnet) {
+	public Outcast(WordNetQueries wordnet) {
+		this(wordnet, false);
+	}
+
+	/**
+	 * @param wordnet  the WordNet to measure distances in, on or off the heap
+	 * @param parallel whether to compute pair distances on the common pool
+	 */
+	public Outcast(WordNetQueries wordnet, boolean parallel) {
 		wn = wordnet;
+		this.parallel = parallel;
 	}
 
 	// given an array of WordNet nouns, return an outcast
 	public String outcast(String[] nouns) {
+		int n = nouns.length;
+		// One BFS per noun; every pair distance is then a merge of two labels.
+		AncestorLabel[] labels = new AncestorLabel[n];
+		for (int i = 0; i < n; i++) {
+			labels[i] = wn.ancestorLabel(nouns[i]);
+		}
+		// The distance is symmetric and zero on the diagonal, so only i < j is merged.
+		int[][] dist = new int[n][n];
+		IntStream rows = IntStream.range(0, n);
+		if (parallel) {
+			rows = rows.parallel();
+		}
+		rows.forEach(i -> {
+			for (int j = i + 1; j < n; j++) {
+				int d = PairCache.length(AncestorLabel.meet(labels[i], labels[j]));
+				dist[i][j] = d;
+				dist[j][i] = d;
+			}
+		});
+
 		String largest = "";
 		int largestDist = 0;
-		for (int i = 0; i < nouns.length; i++) {
+		for (int i = 0; i < n; i++) {
 			int sumDist = 0;
-			for (int j = 0; j < nouns.length; j++) {
-				int dist = wn.distance(nouns[i], nouns[j]);
-//				System.out.println(nouns[i] + " " + nouns[j] + ":" + dist);
-				sumDist += dist;
+			for (int j = 0; j < n; j++) {
+				sumDist += dist[i][j];
 			}
-//			System.out.println(nouns[i] + "sumDist= "+sumDist);
 			if (sumDist > largestDist) {
 				largestDist = sumDist;
 				largest = nouns[i];
@@ -28,9 +66,65 @@ public class Outcast {
 		return largest;
 	}
 
-	// see test client below
-	public static void main(String[] args) {
+	/**
+	 * Solves every outcast file against one shared WordNet on a pool of worker
+	 * threads. Answers are printed as "file: outcast" in input order, each as
+	 * soon as it and every file before it are solved, followed by the
+	 * throughput and the latency percentiles of the individual problems.
+	 * 
+	 * @param wordnet the WordNet shared by all workers
+	 * @param files   outcast files, one whitespace-separated list of nouns each
+	 * @param threads number of worker threads
+	 */
+	public static void batch(WordNetQueries wordnet, String[] files, int threads)
+			throws InterruptedException, ExecutionException {
+		Outcast oc = new Outcast(wordnet);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		long begin = System.nanoTime();
+		List<Future<Long>> results = new ArrayList<>(files.length);
+		String[] answers = new String[files.length];
+		for (int i = 0; i < files.length; i++) {
+			int k = i;
+			results.add(pool.submit(() -> {
+				long start = System.nanoTime();
+				answers[k] = oc.outcast(new In(files[k]).readAllStrings());
+				return System.nanoTime() - start;
+			}));
+		}
+		long[] nanos = new long[files.length];
+		try {
+			for (int i = 0; i < files.length; i++) {
+				// get() also makes the worker's write to answers[i] visible here.
+				nanos[i] = results.get(i).get();
+				System.out.println(files[i] + ": " + answers[i]);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		long elapsed = System.nanoTime() - begin;
+
+		Arrays.sort(nanos);
+		System.out.printf("%d problems on %d threads in %.1f ms: %.0f problems/s%n", files.length, threads,
+				elapsed / 1e6, files.length / (elapsed / 1e9));
+		if (files.length > 0) {
+			System.out.printf("latency ms: p50 %.3f, p90 %.3f, p99 %.3f, max %.3f%n", percentile(nanos, 50) / 1e6,
+					percentile(nanos, 90) / 1e6, percentile(nanos, 99) / 1e6, nanos[nanos.length - 1] / 1e6);
+		}
+	}
+
+	// Nearest-rank percentile of sorted values.
+	private static long percentile(long[] sorted, int p) {
+		int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+	// see test client below; with arguments, solves each named outcast file
+	public static void main(String[] args) throws InterruptedException, ExecutionException {
 		WordNet wn = new WordNet(path + "synsets.txt", path + "hypernyms.txt");
+		if (args.length > 0) {
+			batch(wn, args, Runtime.getRuntime().availableProcessors());
+			return;
+		}
 		Outcast oc = new Outcast(wn);
 //		String[] testCase = {"car", "auto", "truck", "plane", "tree", "train", "vehicle", "van"};
 //		String[] testCase = {"Turing", "von_Neumann", "Mickey_Mouse"};
@@ -0,0 +1,273 @@
+import java.util.Arrays;
+
+/**
+ * Size-bounded LRU cache of shortest ancestral path results.
+ * <p>
+ * Keys are unordered vertex pairs packed into a long as (min << 32 | max) and
+ * values pack the ancestor and the length into another long, so one entry
+ * answers both {@code length(v, w)} and {@code ancestor(w, v)}. Entries live in
+ * parallel primitive arrays: an open-addressing table maps a key to its entry
+ * and a doubly linked list threaded through prev/next orders entries from most
+ * to least recently used.
+ * <p>
+ * The cache is split into independently locked segments chosen by the key's
+ * hash, so threads sharing one cache only contend when they touch the same
+ * segment. Recency is tracked per segment: the entry evicted is the least
+ * recently used one of its segment.
+ */
+public class PairCache {
+
+	static final long MISS = Long.MIN_VALUE; // No valid packed result has ancestor Integer.MIN_VALUE.
+
+	private static final long EMPTY = -1L; // Never a valid key, vertices are non-negative.
+	private static final int NIL = -1;
+	private static final int MAX_SEGMENTS = 16;
+	private static final int MIN_SEGMENT_CAPACITY = 64;
+
+	private final int capacity;
+	private final Segment[] segments;
+	private final int segmentShift; // Top hash bits pick the segment, low bits the slot.
+
+	/**
+	 * Creates an empty cache.
+	 *
+	 * @param capacity maximum number of pairs kept
+	 */
+	public PairCache(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Cache capacity must be positive.");
+		}
+		this.capacity = capacity;
+		// Small caches keep one segment so their LRU order stays close to global.
+		int count = Math.min(MAX_SEGMENTS, Integer.highestOneBit(Math.max(1, capacity / MIN_SEGMENT_CAPACITY)));
+		segments = new Segment[count];
+		for (int i = 0; i < count; i++) {
+			// Spread the capacity so the segments add up to exactly capacity.
+			segments[i] = new Segment(capacity / count + (i < capacity % count ? 1 : 0));
+		}
+		segmentShift = 32 - Integer.numberOfTrailingZeros(count);
+	}
+
+	static long pack(int ancestor, int length) {
+		return ((long) ancestor << 32) | (length & 0xFFFFFFFFL);
+	}
+
+	static int ancestor(long packed) {
+		return (int) (packed >> 32);
+	}
+
+	static int length(long packed) {
+		return (int) packed;
+	}
+
+	/**
+	 * Returns the packed result cached for the pair and marks it most recently
+	 * used, or {@link #MISS}.
+	 */
+	long get(int v, int w) {
+		long key = key(v, w);
+		int hash = hash(key);
+		return segment(hash).get(key, hash);
+	}
+
+	/**
+	 * Caches the packed result for the pair, evicting the least recently used
+	 * pair of its segment when that segment is full.
+	 */
+	void put(int v, int w, long value) {
+		long key = key(v, w);
+		int hash = hash(key);
+		segment(hash).put(key, hash, value);
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size;
+			}
+		}
+		return size;
+	}
+
+	public long hits() {
+		long hits = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				hits += segment.hits;
+			}
+		}
+		return hits;
+	}
+
+	public long misses() {
+		long misses = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				misses += segment.misses;
+			}
+		}
+		return misses;
+	}
+
+	public long evictions() {
+		long evictions = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				evictions += segment.evictions;
+			}
+		}
+		return evictions;
+	}
+
+	@Override
+	public String toString() {
+		return "PairCache[size=" + size() + "/" + capacity + ", hits=" + hits() + ", misses=" + misses()
+				+ ", evictions=" + evictions() + "]";
+	}
+
+	private Segment segment(int hash) {
+		return segmentShift == 32 ? segments[0] : segments[hash >>> segmentShift];
+	}
+
+	private static long key(int v, int w) {
+		return v < w ? ((long) v << 32) | w : ((long) w << 32) | v;
+	}
+
+	private static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	// One independently locked LRU table.
+	private static final class Segment {
+		private final int capacity;
+		private final int mask;
+		private final long[] table; // table[slot] = key, or EMPTY.
+		private final int[] slotEntry; // slotEntry[slot] = index of the entry holding table[slot].
+
+		private final long[] values; // values[e] = packed (ancestor, length) of entry e.
+		private final int[] slots; // slots[e] = table slot of entry e.
+		private final int[] prev;
+		private final int[] next;
+		private int head = NIL; // Most recently used entry.
+		private int tail = NIL; // Least recently used entry, evicted first.
+		private int size;
+
+		private long hits;
+		private long misses;
+		private long evictions;
+
+		Segment(int capacity) {
+			this.capacity = capacity;
+			// Keep the table at most half full so probe sequences stay short.
+			int tableSize = Integer.highestOneBit(capacity * 4 - 1);
+			mask = tableSize - 1;
+			table = new long[tableSize];
+			Arrays.fill(table, EMPTY);
+			slotEntry = new int[tableSize];
+			values = new long[capacity];
+			slots = new int[capacity];
+			prev = new int[capacity];
+			next = new int[capacity];
+		}
+
+		synchronized long get(long key, int hash) {
+			int slot = find(key, hash);
+			if (table[slot] == EMPTY) {
+				misses++;
+				return MISS;
+			}
+			hits++;
+			int e = slotEntry[slot];
+			unlink(e);
+			linkFirst(e);
+			return values[e];
+		}
+
+		synchronized void put(long key, int hash, long value) {
+			int slot = find(key, hash);
+			if (table[slot] != EMPTY) {
+				int e = slotEntry[slot];
+				values[e] = value;
+				unlink(e);
+				linkFirst(e);
+				return;
+			}
+			int e;
+			if (size < capacity) {
+				e = size++;
+			} else {
+				e = tail;
+				unlink(e);
+				removeSlot(slots[e]);
+				evictions++;
+				// Removing may have shifted the free slot for the new key.
+				slot = find(key, hash);
+			}
+			table[slot] = key;
+			slotEntry[slot] = e;
+			values[e] = value;
+			slots[e] = slot;
+			linkFirst(e);
+		}
+
+		// Slot holding key, or the empty slot where it would be inserted.
+		private int find(long key, int hash) {
+			int slot = hash & mask;
+			while (table[slot] != EMPTY && table[slot] != key) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		// Linear-probing deletion: shift later keys of the same run back into the hole.
+		private void removeSlot(int hole) {
+			table[hole] = EMPTY;
+			int slot = (hole + 1) & mask;
+			while (table[slot] != EMPTY) {
+				int home = hash(table[slot]) & mask;
+				// Move the key if its home is not cyclically within (hole, slot].
+				if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+					table[hole] = table[slot];
+					slotEntry[hole] = slotEntry[slot];
+					slots[slotEntry[hole]] = hole;
+					table[slot] = EMPTY;
+					hole = slot;
+				}
+				slot = (slot + 1) & mask;
+			}
+		}
+
+		private void unlink(int e) {
+			if (prev[e] != NIL) {
+				next[prev[e]] = next[e];
+			} else {
+				head = next[e];
+			}
+			if (next[e] != NIL) {
+				prev[next[e]] = prev[e];
+			} else {
+				tail = prev[e];
+			}
+		}
+
+		private void linkFirst(int e) {
+			prev[e] = NIL;
+			next[e] = head;
+			if (head != NIL) {
+				prev[head] = e;
+			} else {
+				tail = e;
+			}
+			head = e;
+		}
+	}
+
+}
@@ -0,0 +1,31 @@
+/**
+ * Per-thread scratch that answers shortest ancestral path queries over one
+ * graph, keeping the answer of the last query.
+ */
+interface PathSearch {
+
+	// Shortest ancestral path between the two single vertices.
+	void find(int v, int w);
+
+	// Shortest ancestral path between any vertex of v and any vertex of w.
+	default void find(int[] v, int[] w) {
+		find(v, 0, v.length, w, 0, w.length);
+	}
+
+	// Shortest ancestral path between any vertex of v[vFrom..vTo) and any
+	// vertex of w[wFrom..wTo), so callers can pass slices of shared arrays.
+	void find(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo);
+
+	// Ancestor found by the last search; -1 if none.
+	int ancestor();
+
+	// Length found by the last search; -1 if none.
+	int length();
+
+	// Vertices the last query took off its queues.
+	int dequeued();
+
+	// Edges the last query examined.
+	int relaxed();
+
+}
@@ -0,0 +1,134 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Per-query traversal counters and histograms for SAP and WordNet queries.
+ * <p>
+ * Instrumentation is opt-in: SAP and WordNet hold no metrics until one is
+ * set, and then only read the clock and record three histogram values per
+ * query. Every method is safe to call from many threads at once.
+ */
+public class QueryMetrics implements QueryMetricsMXBean {
+
+	private final Histogram latency = new Histogram(); // Wall time per query in nanoseconds.
+	private final Histogram dequeued = new Histogram(); // Vertices taken off a BFS queue per query.
+	private final Histogram relaxed = new Histogram(); // Edges examined per query.
+	private final LongAdder queries = new LongAdder();
+	private final LongAdder totalDequeued = new LongAdder();
+	private final LongAdder totalRelaxed = new LongAdder();
+
+	void record(long nanos, long vertices, long edges) {
+		latency.record(nanos);
+		dequeued.record(vertices);
+		relaxed.record(edges);
+		queries.increment();
+		totalDequeued.add(vertices);
+		totalRelaxed.add(edges);
+	}
+
+	/**
+	 * Registers these metrics with the platform MBean server.
+	 * 
+	 * @param name distinguishes this instance, e.g. "wordnet"
+	 * @return the name the MXBean was registered under
+	 * @throws JMException if the name is malformed or already taken
+	 */
+	public ObjectName register(String name) throws JMException {
+		ObjectName objectName = new ObjectName("WordNet:type=QueryMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+
+	@Override
+	public long getQueries() {
+		return queries.sum();
+	}
+
+	@Override
+	public long getVerticesDequeued() {
+		return totalDequeued.sum();
+	}
+
+	@Override
+	public long getEdgesRelaxed() {
+		return totalRelaxed.sum();
+	}
+
+	@Override
+	public long getLatencyNanosP50() {
+		return latency.percentile(50);
+	}
+
+	@Override
+	public long getLatencyNanosP90() {
+		return latency.percentile(90);
+	}
+
+	@Override
+	public long getLatencyNanosP99() {
+		return latency.percentile(99);
+	}
+
+	@Override
+	public long getLatencyNanosP999() {
+		return latency.percentile(99.9);
+	}
+
+	@Override
+	public long getLatencyNanosMax() {
+		return latency.max();
+	}
+
+	@Override
+	public long getVerticesDequeuedP50() {
+		return dequeued.percentile(50);
+	}
+
+	@Override
+	public long getVerticesDequeuedP99() {
+		return dequeued.percentile(99);
+	}
+
+	@Override
+	public long getVerticesDequeuedMax() {
+		return dequeued.max();
+	}
+
+	@Override
+	public long getEdgesRelaxedP50() {
+		return relaxed.percentile(50);
+	}
+
+	@Override
+	public long getEdgesRelaxedP99() {
+		return relaxed.percentile(99);
+	}
+
+	@Override
+	public long getEdgesRelaxedMax() {
+		return relaxed.max();
+	}
+
+	@Override
+	public void reset() {
+		latency.reset();
+		dequeued.reset();
+		relaxed.reset();
+		queries.reset();
+		totalDequeued.reset();
+		totalRelaxed.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "QueryMetrics[queries=" + getQueries() + ", latencyNanos p50/p99/max=" + getLatencyNanosP50() + "/"
+				+ getLatencyNanosP99() + "/" + getLatencyNanosMax() + ", dequeued p50/p99/max="
+				+ getVerticesDequeuedP50() + "/" + getVerticesDequeuedP99() + "/" + getVerticesDequeuedMax()
+				+ ", relaxed p50/p99/max=" + getEdgesRelaxedP50() + "/" + getEdgesRelaxedP99() + "/"
+				+ getEdgesRelaxedMax() + "]";
+	}
+
+}
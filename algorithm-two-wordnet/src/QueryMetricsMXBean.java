@@ -0,0 +1,37 @@
+/**
+ * Management view of {@link QueryMetrics}: totals since the last reset and
+ * percentiles of the per-query latency, vertices dequeued and edges relaxed.
+ */
+public interface QueryMetricsMXBean {
+
+	long getQueries();
+
+	long getVerticesDequeued();
+
+	long getEdgesRelaxed();
+
+	long getLatencyNanosP50();
+
+	long getLatencyNanosP90();
+
+	long getLatencyNanosP99();
+
+	long getLatencyNanosP999();
+
+	long getLatencyNanosMax();
+
+	long getVerticesDequeuedP50();
+
+	long getVerticesDequeuedP99();
+
+	long getVerticesDequeuedMax();
+
+	long getEdgesRelaxedP50();
+
+	long getEdgesRelaxedP99();
+
+	long getEdgesRelaxedMax();
+
+	void reset();
+
+}
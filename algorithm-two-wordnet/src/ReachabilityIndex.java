@@ -0,0 +1,203 @@
+import java.util.Arrays;
+
+/**
+ * Reachability index for a DAG made of several DFS interval labels.
+ * <p>
+ * Each traversal is a DFS from every vertex without in-edges, visiting
+ * children in its own order, and labels v with [low, post]: v's postorder
+ * rank and the smallest rank in the subgraph v reaches. If x reaches y then
+ * y's interval lies inside x's in every traversal, so one traversal without
+ * containment proves y unreachable. The traversals disagree on most false
+ * positives; the few left are settled by a DFS from x that only enters
+ * vertices whose intervals still contain y's.
+ */
+public class ReachabilityIndex {
+
+	private static final int TRAVERSALS = 3;
+
+	private int vertices;
+	private int[] low; // low[v * TRAVERSALS + t] = lowest rank below v in traversal t.
+	private int[] post; // post[v * TRAVERSALS + t] = v's postorder rank in traversal t.
+	private final long buildNanos;
+	private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+	/**
+	 * Labels every vertex, in O(TRAVERSALS * (V + E)).
+	 *
+	 * @param g a DAG whose edges point from a vertex to its parents
+	 */
+	ReachabilityIndex(CsrDigraph g) {
+		long begin = System.nanoTime();
+		int V = g.V();
+		vertices = V;
+		low = new int[V * TRAVERSALS];
+		post = new int[V * TRAVERSALS];
+		boolean[] source = new boolean[V];
+		Arrays.fill(source, true);
+		for (int w : g.targets) {
+			source[w] = false;
+		}
+		int[] stack = new int[16];
+		int[] next = new int[16]; // next[d] = edges of stack[d] followed so far.
+		boolean[] visited = new boolean[V];
+		for (int t = 0; t < TRAVERSALS; t++) {
+			Arrays.fill(visited, false);
+			int rank = 0;
+			for (int k = 0; k < V; k++) {
+				int root = t % 2 == 0 ? k : V - 1 - k;
+				if (!source[root]) {
+					continue;
+				}
+				int depth = 0;
+				stack[0] = root;
+				next[0] = 0;
+				visited[root] = true;
+				low[root * TRAVERSALS + t] = Integer.MAX_VALUE;
+				while (depth >= 0) {
+					int v = stack[depth];
+					int degree = g.outdegree(v);
+					if (next[depth] < degree) {
+						int w = g.targets[g.offsets[v] + child(v, t, next[depth]++, degree)];
+						if (!visited[w]) {
+							visited[w] = true;
+							low[w * TRAVERSALS + t] = Integer.MAX_VALUE;
+							if (++depth == stack.length) {
+								stack = Arrays.copyOf(stack, depth * 2);
+								next = Arrays.copyOf(next, depth * 2);
+							}
+							stack[depth] = w;
+							next[depth] = 0;
+						} else {
+							// A DAG has no back edges, so w is already finished.
+							low[v * TRAVERSALS + t] = Math.min(low[v * TRAVERSALS + t], low[w * TRAVERSALS + t]);
+						}
+					} else {
+						post[v * TRAVERSALS + t] = rank;
+						low[v * TRAVERSALS + t] = Math.min(low[v * TRAVERSALS + t], rank);
+						rank++;
+						if (--depth >= 0) {
+							int parent = stack[depth] * TRAVERSALS + t;
+							low[parent] = Math.min(low[parent], low[v * TRAVERSALS + t]);
+						}
+					}
+				}
+			}
+		}
+		buildNanos = System.nanoTime() - begin;
+	}
+
+	// Index of the k-th child of v to visit in traversal t: the first goes in
+	// order, the others start at a different edge of each vertex.
+	private static int child(int v, int t, int k, int degree) {
+		if (t == 0 || degree == 1) {
+			return k;
+		}
+		int rotation = (int) (((v + 1) * 0x9E3779B9L * t) >>> 16);
+		return (k + Math.floorMod(rotation, degree)) % degree;
+	}
+
+	/**
+	 * Widens the intervals of vertices that reach more after edges or vertices
+	 * were added to g, so that each contains its parents' intervals again. A
+	 * new vertex starts empty. Wider intervals only cost more fallback
+	 * searches; answers stay exact.
+	 *
+	 * @param g       the updated DAG
+	 * @param changed the vertices to widen, each after all of its parents among them
+	 */
+	void relabel(CsrDigraph g, int[] changed) {
+		if (low.length < g.V() * TRAVERSALS) {
+			int V = Math.max(g.V(), vertices + (vertices >> 3));
+			int old = low.length;
+			low = Arrays.copyOf(low, V * TRAVERSALS);
+			post = Arrays.copyOf(post, V * TRAVERSALS);
+			Arrays.fill(low, old, low.length, Integer.MAX_VALUE);
+			Arrays.fill(post, old, post.length, Integer.MIN_VALUE);
+		}
+		vertices = g.V();
+		for (int v : changed) {
+			for (int i = g.offsets[v]; i < g.offsets[v + 1]; i++) {
+				int w = g.targets[i];
+				for (int t = 0; t < TRAVERSALS; t++) {
+					low[v * TRAVERSALS + t] = Math.min(low[v * TRAVERSALS + t], low[w * TRAVERSALS + t]);
+					post[v * TRAVERSALS + t] = Math.max(post[v * TRAVERSALS + t], post[w * TRAVERSALS + t]);
+				}
+			}
+		}
+	}
+
+	// Whether every interval of y lies inside the matching interval of x.
+	private boolean contains(int x, int y) {
+		for (int t = 0; t < TRAVERSALS; t++) {
+			if (low[x * TRAVERSALS + t] > low[y * TRAVERSALS + t]
+					|| post[x * TRAVERSALS + t] < post[y * TRAVERSALS + t]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether x reaches y in g, x == y included.
+	 *
+	 * @param g the DAG the index was built and updated for
+	 */
+	boolean reaches(CsrDigraph g, int x, int y) {
+		if (x == y) {
+			return true;
+		}
+		if (!contains(x, y)) {
+			return false;
+		}
+		Scratch s = scratch.get();
+		if (s.mark.length < vertices || s.epoch == Integer.MAX_VALUE) {
+			s.mark = new int[vertices + (vertices >> 3)];
+			s.epoch = 0;
+		}
+		int epoch = ++s.epoch;
+		int[] stack = s.stack;
+		int size = 0;
+		stack[size++] = x;
+		s.mark[x] = epoch;
+		while (size > 0) {
+			int v = stack[--size];
+			for (int i = g.offsets[v]; i < g.offsets[v + 1]; i++) {
+				int w = g.targets[i];
+				if (w == y) {
+					return true;
+				}
+				if (s.mark[w] != epoch && contains(w, y)) {
+					s.mark[w] = epoch;
+					if (size == stack.length) {
+						stack = s.stack = Arrays.copyOf(stack, size * 2);
+					}
+					stack[size++] = w;
+				}
+			}
+		}
+		return false;
+	}
+
+	public long buildMillis() {
+		return buildNanos / 1_000_000;
+	}
+
+	// Approximate heap bytes held by the label arrays.
+	public long memoryBytes() {
+		return 4L * (low.length + post.length) + 2 * 16;
+	}
+
+	@Override
+	public String toString() {
+		return "ReachabilityIndex[vertices=" + vertices + ", traversals=" + TRAVERSALS + ", bytes=" + memoryBytes()
+				+ ", buildMillis=" + buildMillis() + "]";
+	}
+
+	// Fallback DFS state owned by one querying thread.
+	private static final class Scratch {
+		int[] mark = new int[0]; // mark[v] == epoch if the current search pushed v.
+		int epoch;
+		int[] stack = new int[16];
+	}
+
+}
@@ -1,115 +1,283 @@
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
-import edu.princeton.cs.algs4.BreadthFirstDirectedPaths;
 import edu.princeton.cs.algs4.Digraph;
 import edu.princeton.cs.algs4.In;
 
 public class SAP {
 
-	private final Digraph g;
+	// Pairs a batch task handles itself instead of splitting further.
+	private static final int BATCH_THRESHOLD = 256;
+
+	private final CsrDigraph g;
+	private final PairCache cache; // Results of recent pair queries; null if disabled.
+	// Scratch buffers owned by each querying thread, so queries need no lock.
+	private final ThreadLocal<PathSearch> search;
+	private final ThreadLocal<AncestralSearch> labelSearch; // Builds and meets hot labels.
+	private volatile HotLabelCache hot; // Labels of frequently queried vertices; null if disabled.
+	private volatile QueryMetrics metrics; // Per-query counters; null while instrumentation is off.
 
 	// constructor takes a digraph (not necessarily a DAG)
 	public SAP(Digraph G) {
-		g = new Digraph(G);
+		g = new CsrDigraph(G);
+		cache = null;
+		search = newSearch(g);
+		labelSearch = ThreadLocal.withInitial(() -> new AncestralSearch(g));
+	}
+
+	/**
+	 * Creates an SAP that remembers the results of up to cacheCapacity recent
+	 * vertex pairs, so repeated pairs and length/ancestor calls on the same pair
+	 * run only one search.
+	 * 
+	 * @param G             the digraph (not necessarily a DAG)
+	 * @param cacheCapacity maximum number of cached pairs
+	 */
+	public SAP(Digraph G, int cacheCapacity) {
+		g = new CsrDigraph(G);
+		cache = new PairCache(cacheCapacity);
+		search = newSearch(g);
+		labelSearch = ThreadLocal.withInitial(() -> new AncestralSearch(g));
+	}
+
+	// Searches the chain-compressed graph when chains make up most of g, and
+	// runs the plain lockstep BFS otherwise.
+	private static ThreadLocal<PathSearch> newSearch(CsrDigraph g) {
+		if (ChainDigraph.worthwhile(g)) {
+			ChainDigraph chains = new ChainDigraph(g);
+			return ThreadLocal.withInitial(() -> new ChainSearch(chains));
+		}
+		return ThreadLocal.withInitial(() -> new AncestralSearch(g));
 	}
 
+	// length of shortest ancestral path between v and w; -1 if no such path
 	public int length(int v, int w) {
-		return sapHelper(v, w)[1];
+		return PairCache.length(sapHelper(v, w));
 	}
 
 	// a common ancestor of v and w that participates in a shortest ancestral path;
 	// -1 if no such path
 	public int ancestor(int v, int w) {
-		return sapHelper(v, w)[0];
+		return PairCache.ancestor(sapHelper(v, w));
 	}
 
-	// length of shortest ancestral path between v and w; -1 if no such path
-	private int[] sapHelper(int v, int w) {
-		// Find min dist to each reachable node from v.
-		Map<Integer, Integer> vR = new HashMap<>();
-		LinkedList<int[]> vQ = new LinkedList<>();
-		vQ.add(new int[] {v, 0});
-		while (!vQ.isEmpty()) {
-			int[] node = vQ.poll();
-			if (!vR.containsKey(node[0])) {
-				vR.put(node[0], node[1]);
-			} else {
-				continue;
-			}
-			for (int i : g.adj(node[0])) {
-				vQ.add(new int[] {i, node[1] + 1});
-			}
+	// the pair result cache with its hit/miss/eviction counters; null if disabled
+	public PairCache cache() {
+		return cache;
+	}
+
+	/**
+	 * Keeps the ancestor labels of up to capacity frequently queried vertices.
+	 * A pair query that misses the pair cache then runs one BFS if either
+	 * endpoint is hot and none if both are. Answers are the same as without
+	 * the cache, ties included: the smallest ancestor id always wins.
+	 * 
+	 * @param capacity maximum number of labels, or 0 to turn the cache off
+	 */
+	public void setHotLabels(int capacity) {
+		hot = capacity == 0 ? null : new HotLabelCache(capacity, g.V());
+	}
+
+	// the hot vertex label cache with its counters; null if disabled
+	public HotLabelCache hotLabels() {
+		return hot;
+	}
+
+	/**
+	 * Turns per-query instrumentation on, or off with null. While on, every
+	 * pair, multi-source and batch query records its wall time, vertices
+	 * dequeued and edges relaxed; cache hits record no traversal.
+	 * 
+	 * @param metrics where to record, or null to stop recording
+	 */
+	public void setMetrics(QueryMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	// the metrics being recorded; null if instrumentation is off
+	public QueryMetrics metrics() {
+		return metrics;
+	}
+
+	// packed (ancestor, length) of the shortest ancestral path between v and w
+	private long sapHelper(int v, int w) {
+		validateVertex(v);
+		validateVertex(w);
+		if (v > w) {
+			// Search in one order so (v, w) and (w, v) report the same ancestor,
+			// cached or not.
+			int swap = v;
+			v = w;
+			w = swap;
 		}
-		// Find min dist to each reachable node from w. Record min(sum(distV, distW))
-		int minFound = Integer.MAX_VALUE;
-		int minNode = -1;
-
-		Map<Integer, Integer> wR = new HashMap<>();
-		LinkedList<int[]> wQ = new LinkedList<>();
-		wQ.add(new int[] {w, 0});
-		while (!wQ.isEmpty()) {
-			int[] node = wQ.poll();
-			if (vR.containsKey(node[0])) {
-				int dist = vR.get(node[0]) + node[1];
-				if (minFound > dist) {
-					minFound = dist;
-					minNode = node[0];
+		QueryMetrics m = metrics;
+		long start = m == null ? 0 : System.nanoTime();
+		if (cache != null) {
+			long cached = cache.get(v, w);
+			if (cached != PairCache.MISS) {
+				if (m != null) {
+					m.record(System.nanoTime() - start, 0, 0);
 				}
+				return cached;
 			}
-			if (!wR.containsKey(node[0])) {
-				wR.put(node[0], node[1]);
-			} else {
-				continue;
-			}
-			for (int i : g.adj(node[0])) {
-				wQ.add(new int[] {i, node[1] + 1});
-			}			
 		}
-		
-		return minNode >= 0 
-				? new int[] {minNode, minFound}
-				: new int[] {-1, -1};
+		HotLabelCache h = hot;
+		long result = PairCache.MISS;
+		PathSearch local = null;
+		if (h != null) {
+			AncestralSearch labels = labelSearch.get();
+			int[] pair = labels.pair(v, w);
+			result = h.find(v, pair, 0, 1, w, pair, 1, 2, labels);
+			local = labels;
+		}
+		if (result == PairCache.MISS) {
+			local = search.get();
+			local.find(v, w);
+			result = PairCache.pack(local.ancestor(), local.length());
+		}
+		if (cache != null) {
+			cache.put(v, w, result);
+		}
+		if (m != null) {
+			m.record(System.nanoTime() - start, local.dequeued(), local.relaxed());
+		}
+		return result;
 	}
-	
-	
 
 	// length of shortest ancestral path between any vertex in v and any vertex in
 	// w; -1 if no such path
 	public int length(Iterable<Integer> v, Iterable<Integer> w) {
-		if (v == null || !v.iterator().hasNext() || w == null || !w.iterator().hasNext()) {
-			throw new IllegalArgumentException("Not a valid problem with empty input.");
-		}
-
-		return find(v, w)[1];
+		return findSets(v, w).length();
 	}
 
 	// a common ancestor that participates in shortest ancestral path; -1 if no such
 	// path
 	public int ancestor(Iterable<Integer> v, Iterable<Integer> w) {
+		return findSets(v, w).ancestor();
+	}
+
+	// this thread's search, after finding the shortest ancestral path between the sets
+	private PathSearch findSets(Iterable<Integer> v, Iterable<Integer> w) {
 		if (v == null || !v.iterator().hasNext() || w == null || !w.iterator().hasNext()) {
 			throw new IllegalArgumentException("Not a valid problem with empty input.");
 		}
 
-		return find(v, w)[0];
+		QueryMetrics m = metrics;
+		long start = m == null ? 0 : System.nanoTime();
+		PathSearch local = search.get();
+		local.find(toArray(v), toArray(w));
+		if (m != null) {
+			m.record(System.nanoTime() - start, local.dequeued(), local.relaxed());
+		}
+		return local;
 	}
 	
-	private int[] find(Iterable<Integer> v, Iterable<Integer> w) {
-		BreadthFirstDirectedPaths vPaths = new BreadthFirstDirectedPaths(g, v);
-		BreadthFirstDirectedPaths wPaths = new BreadthFirstDirectedPaths(g, w);
-		int shortest = Integer.MAX_VALUE;
-		int node = -1;
-		for (int i = 0; i < g.V(); i ++) {
-			if (vPaths.hasPathTo(i) && wPaths.hasPathTo(i)) {				
-				int dist = vPaths.distTo(i) + wPaths.distTo(i);
-				if (dist < shortest) {
-					shortest = dist;
-					node = i;
+	/**
+	 * Lengths of the shortest ancestral paths between v[i] and w[i] for every i,
+	 * computed in parallel on the common ForkJoinPool. Entries are -1 where
+	 * there is no such path. Each pair is answered as a single call would be,
+	 * through the pair cache if there is one.
+	 * 
+	 * @param v first vertex of each pair
+	 * @param w second vertex of each pair
+	 * @return lengths[i] for the pair (v[i], w[i])
+	 */
+	public int[] lengths(int[] v, int[] w) {
+		return batch(v, w, false);
+	}
+
+	/**
+	 * Common ancestors on the shortest ancestral paths between v[i] and w[i] for
+	 * every i, computed in parallel on the common ForkJoinPool. Entries are -1
+	 * where there is no such path. Each pair is answered as a single call would
+	 * be, through the pair cache if there is one.
+	 * 
+	 * @param v first vertex of each pair
+	 * @param w second vertex of each pair
+	 * @return ancestors[i] for the pair (v[i], w[i])
+	 */
+	public int[] ancestors(int[] v, int[] w) {
+		return batch(v, w, true);
+	}
+
+	private int[] batch(int[] v, int[] w, boolean ancestors) {
+		if (v == null || w == null || v.length != w.length) {
+			throw new IllegalArgumentException("Batch needs two vertex arrays of equal length.");
+		}
+		for (int i = 0; i < v.length; i++) {
+			validateVertex(v[i]);
+			validateVertex(w[i]);
+		}
+		int[] results = new int[v.length];
+		ForkJoinPool.commonPool().invoke(new BatchTask(v, w, results, ancestors, 0, v.length));
+		return results;
+	}
+
+	// Splits a range of pairs in halves until it is small enough to answer
+	// sequentially through sapHelper, so every pair is ordered, cached and
+	// recorded exactly as a single call is.
+	private class BatchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int[] v;
+		private final int[] w;
+		private final int[] results;
+		private final boolean ancestors;
+		private final int lo;
+		private final int hi;
+
+		BatchTask(int[] v, int[] w, int[] results, boolean ancestors, int lo, int hi) {
+			this.v = v;
+			this.w = w;
+			this.results = results;
+			this.ancestors = ancestors;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo <= BATCH_THRESHOLD) {
+				for (int i = lo; i < hi; i++) {
+					long result = sapHelper(v[i], w[i]);
+					results[i] = ancestors ? PairCache.ancestor(result) : PairCache.length(result);
 				}
+				return;
 			}
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new BatchTask(v, w, results, ancestors, lo, mid),
+					new BatchTask(v, w, results, ancestors, mid, hi));
+		}
+	}
+
+	private int[] toArray(Iterable<Integer> vertices) {
+		int n = 0;
+		for (Integer vertex : vertices) {
+			if (vertex == null) {
+				throw new IllegalArgumentException("Vertex must not be null.");
+			}
+			validateVertex(vertex);
+			n++;
+		}
+		int[] array = new int[n];
+		int i = 0;
+		for (int vertex : vertices) {
+			array[i++] = vertex;
+		}
+		return array;
+	}
+
+	private void validateVertex(int v) {
+		if (v < 0 || v >= g.V()) {
+			throw new IllegalArgumentException("Vertex " + v + " is not between 0 and " + (g.V() - 1));
 		}
-		return new int[] { node, shortest };
 	}
 
 	private static void test(int v, int w, String test) {
@@ -118,9 +286,115 @@ public class SAP {
 //		System.out.println(sap.ancestor(v,w));
 	}
 	
-	public static void main(String[] args) {
+	// Hammers one shared, cached SAP with length/ancestor calls from several
+	// threads and with batches, and fails on any answer that differs from a
+	// sequential run of the same pairs.
+	private static void concurrencyTest(String test, int threads, int queries)
+			throws InterruptedException, ExecutionException {
+		Digraph G = new Digraph(new In("resources/wordnet/" + test));
+		Random random = new Random(42);
+		int[] v = new int[queries];
+		int[] w = new int[queries];
+		for (int i = 0; i < queries; i++) {
+			// Draw from a small pool so threads keep hitting the same cache entries.
+			v[i] = random.nextInt(Math.min(G.V(), 500));
+			w[i] = random.nextInt(G.V());
+		}
+		SAP sequential = new SAP(G);
+		int[] lengths = new int[queries];
+		int[] ancestors = new int[queries];
+		for (int i = 0; i < queries; i++) {
+			lengths[i] = sequential.length(v[i], w[i]);
+			ancestors[i] = sequential.ancestor(v[i], w[i]);
+		}
+
+		SAP shared = new SAP(G, 1 << 10);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<Integer>> results = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			int offset = t * queries / threads;
+			results.add(pool.submit(() -> {
+				int mismatches = 0;
+				for (int k = 0; k < queries; k++) {
+					// Each thread walks the pairs from a different point, in both orders.
+					int i = (offset + k) % queries;
+					boolean swap = (k & 1) == 1;
+					int length = swap ? shared.length(w[i], v[i]) : shared.length(v[i], w[i]);
+					int ancestor = swap ? shared.ancestor(w[i], v[i]) : shared.ancestor(v[i], w[i]);
+					if (length != lengths[i] || ancestor != ancestors[i]) {
+						mismatches++;
+					}
+				}
+				return mismatches;
+			}));
+		}
+		int mismatches = 0;
+		for (Future<Integer> result : results) {
+			mismatches += result.get();
+		}
+		pool.shutdown();
+		// Batches in both orders, against the warm cache.
+		int[] batchLengths = shared.lengths(w, v);
+		int[] batchAncestors = shared.ancestors(v, w);
+		for (int i = 0; i < queries; i++) {
+			if (batchLengths[i] != lengths[i] || batchAncestors[i] != ancestors[i]) {
+				mismatches++;
+			}
+		}
+		if (mismatches > 0) {
+			throw new IllegalStateException(threads + " threads x " + queries + " queries on " + test + ": "
+					+ mismatches + " answers differ from the sequential run");
+		}
+		System.out.println(threads + " threads x " + queries + " queries on " + test + ": no mismatches, "
+				+ shared.cache());
+	}
+
+	// Answers skewed pairs, a few hot vertices against random ones, with the
+	// hot label cache on and off, in both orders and in a batch, and fails on
+	// any ancestor or length that differs.
+	private static void hotLabelTest(String test, int queries) {
+		Digraph G = new Digraph(new In("resources/wordnet/" + test));
+		Random random = new Random(7);
+		int[] pool = new int[Math.min(G.V(), 32)];
+		for (int i = 0; i < pool.length; i++) {
+			pool[i] = random.nextInt(G.V());
+		}
+		int[] v = new int[queries];
+		int[] w = new int[queries];
+		for (int i = 0; i < queries; i++) {
+			v[i] = pool[random.nextInt(pool.length)];
+			w[i] = random.nextBoolean() ? pool[random.nextInt(pool.length)] : random.nextInt(G.V());
+		}
+		SAP plain = new SAP(G);
+		SAP hot = new SAP(G);
+		hot.setHotLabels(pool.length / 2);
+		int mismatches = 0;
+		for (int i = 0; i < queries; i++) {
+			int ancestor = plain.ancestor(v[i], w[i]);
+			if (hot.ancestor(v[i], w[i]) != ancestor || hot.ancestor(w[i], v[i]) != ancestor
+					|| hot.length(w[i], v[i]) != plain.length(v[i], w[i])) {
+				mismatches++;
+			}
+		}
+		int[] batch = hot.ancestors(w, v);
+		for (int i = 0; i < queries; i++) {
+			if (batch[i] != plain.ancestor(v[i], w[i])) {
+				mismatches++;
+			}
+		}
+		if (mismatches > 0) {
+			throw new IllegalStateException(
+					queries + " queries on " + test + ": " + mismatches + " answers change with hot labels");
+		}
+		System.out.println(queries + " queries on " + test + ": hot labels agree, " + hot.hotLabels());
+	}
+
+	public static void main(String[] args) throws InterruptedException, ExecutionException {
 		
 		test(34252, 29893, "digraph-wordnet.txt");
+		concurrencyTest("digraph-wordnet.txt", 8, 20000);
+		hotLabelTest("digraph-ambiguous-ancestor.txt", 2000);
+		hotLabelTest("digraph-wordnet.txt", 20000);
 		
 //		System.out.println(sap.length(3, 11));
 //		System.out.println(sap.ancestor(3, 11));
@@ -0,0 +1,57 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The word lists of all synsets as UTF-8 in one byte arena. Synset v's text
+ * is arena[offsets[v]..offsets[v + 1]), so the whole table is two arrays
+ * instead of a String per synset, and a String is decoded only for the
+ * synsets a query returns.
+ */
+class SynsetText {
+
+	byte[] arena;
+	int[] offsets; // offsets[v] = start of synset v's text; offsets[size()] = end of the last one.
+	private int count;
+
+	/**
+	 * Wraps an arena and its offset table without copying them.
+	 *
+	 * @param arena   UTF-8 text of every synset, in id order
+	 * @param offsets count + 1 offsets into arena
+	 * @param count   number of synsets
+	 */
+	SynsetText(byte[] arena, int[] offsets, int count) {
+		this.arena = arena;
+		this.offsets = offsets;
+		this.count = count;
+	}
+
+	int size() {
+		return count;
+	}
+
+	// Decodes the words of synset v.
+	String get(int v) {
+		return new String(arena, offsets[v], offsets[v + 1] - offsets[v], StandardCharsets.UTF_8);
+	}
+
+	// Appends the text of a new synset with id size().
+	void add(String words) {
+		byte[] bytes = words.getBytes(StandardCharsets.UTF_8);
+		int from = offsets[count];
+		if (arena.length < from + bytes.length) {
+			arena = Arrays.copyOf(arena, Math.max(from + bytes.length, arena.length + (arena.length >> 1)));
+		}
+		System.arraycopy(bytes, 0, arena, from, bytes.length);
+		if (offsets.length == ++count) {
+			offsets = Arrays.copyOf(offsets, count + (count >> 1) + 1);
+		}
+		offsets[count] = from + bytes.length;
+	}
+
+	// Approximate heap bytes held by the two arrays.
+	long memoryBytes() {
+		return arena.length + 4L * offsets.length + 2 * 16;
+	}
+
+}
@@ -1,23 +1,30 @@
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Queue;
-import java.util.Stack;
+import java.util.Set;
 
-import edu.princeton.cs.algs4.Bag;
-import edu.princeton.cs.algs4.In;
-
-public class WordNet {
+public class WordNet implements WordNetQueries {
 
 	private final static String path = "resources/wordnet/";
 
 	private int V; // Number of words (vertices)
-	private List<Bag<Integer>> adj; // adj[v] = adjacency list for vertex V, synset V's hypernyms.
-	private List<String> synset; // synset.get(v) = the list of synset words with index v.
-	private Map<String, Integer> nouns; // Maps a noun to its containing synset
+	private SynsetText synset; // synset.get(v) decodes the list of synset words with index v.
+	private NounIndex nouns; // Maps a noun to every synset containing it
+	private CsrDigraph g; // g.targets of v = synset v's hypernyms, in CSR form.
+	private ThreadLocal<AncestralSearch> search; // BFS scratch over g owned by each querying thread.
+	private AncestorLabelIndex labels; // Precomputed ancestor labels; null unless requested.
+	private ChainDigraph chains; // g with chains collapsed; null unless chains make up most of g.
+	private ThreadLocal<ChainSearch> chainSearch; // Bucket-queue scratch over chains; null with them.
+	private volatile QueryMetrics metrics; // Per-query counters; null while instrumentation is off.
+	private volatile HotLabelCache hot; // Labels of frequently queried nouns; null if disabled.
+	private AncestorBitmapIndex closure; // Ancestor set bitmaps; null unless requested.
+	private ReachabilityIndex reach; // Interval labels answering isHypernym().
+	private CsrDigraph hyponyms; // Reverse of g: the targets of v are synset v's hyponyms.
+	private int[] mark; // mark[v] == markEpoch if v was reached by the last descendants() walk.
+	private int markEpoch;
 
 	/**
 	 * Constructs the WordNet from a file.
@@ -26,172 +33,573 @@ public class WordNet {
 	 * @param hypernyms Name for file containing list of relationships.
 	 */
 	public WordNet(String synsets, String hypernyms) {
-		this(new In(synsets), new In(hypernyms));
+		this(WordNetLoader.load(synsets, hypernyms), false, false);
 	}
 
 	/**
-	 * Constructs the WordNet from a file.
+	 * Constructs the WordNet from a file, optionally precomputing the ancestor
+	 * label of every synset so that distance() and sap() merge two labels
+	 * instead of traversing the graph.
 	 * 
-	 * @param synsets   Input stream for file containing list of synsets.
-	 * @param hypernyms Input stream for file containing list of relationships.
-	 */
-	private WordNet(In synsets, In hypernyms) {
-		adj = new ArrayList<>();
-		synset = new ArrayList<>();
-		nouns = new HashMap<>();
-
-		// Initialize vertexes
-		String line = null;
-		while (true) {
-			line = synsets.readLine();
-			if (line == null) { break; }
-			String[] tokens = line.split(",");
-			synset.add(tokens[1]);
-			adj.add(new Bag<>());
-			V++;
-			Integer vertex = Integer.parseInt(tokens[0]);
-			Arrays.stream(tokens[1].split(" ")).forEach(word -> {
-				nouns.put(word, vertex);
-			});
-		}
-
-		// Fill edges
-		while (true) {
-			line = hypernyms.readLine();
-			if (line == null) { break; }
-			String[] tokens = line.split(",");
-			Bag<Integer> hypernymIndexes = adj.get(Integer.parseInt(tokens[0]));
-			for (int i = 1; i < tokens.length; i++) {
-				Integer to = Integer.parseInt(tokens[i]);
-				hypernymIndexes.add(to);
-			}
-		}
+	 * @param synsets    Name for file containing list of synsets.
+	 * @param hypernyms  Name for file containing list of relationships.
+	 * @param labelIndex Whether to build the ancestor label index.
+	 */
+	public WordNet(String synsets, String hypernyms, boolean labelIndex) {
+		this(WordNetLoader.load(synsets, hypernyms), labelIndex, false);
+	}
 
-		// Graph should contain only 1 root.
-		boolean rootFound = false;
-		for (Bag<Integer> adjcents : adj) {
-			if (adjcents.isEmpty()) {
-				if (!rootFound) {
-					rootFound = true;
-				} else {
-					throw new IllegalArgumentException("Input not corresponding to a single-rooted DAG.");
-				}
-			}
+	/**
+	 * Constructs the WordNet from a file with optional precomputed indexes:
+	 * ancestor labels for distance() and sap(), and ancestor set bitmaps for
+	 * commonHypernyms() and commonHypernymCount().
+	 * 
+	 * @param synsets         Name for file containing list of synsets.
+	 * @param hypernyms       Name for file containing list of relationships.
+	 * @param labelIndex      Whether to build the ancestor label index.
+	 * @param ancestorBitmaps Whether to build the ancestor bitmap index.
+	 */
+	public WordNet(String synsets, String hypernyms, boolean labelIndex, boolean ancestorBitmaps) {
+		this(WordNetLoader.load(synsets, hypernyms), labelIndex, ancestorBitmaps);
+	}
+
+	/**
+	 * Constructs the WordNet from parsed files.
+	 * 
+	 * @param loaded          Graph, synsets and nouns parsed by WordNetLoader.
+	 * @param labelIndex      Whether to build the ancestor label index.
+	 * @param ancestorBitmaps Whether to build the ancestor bitmap index.
+	 */
+	private WordNet(WordNetLoader loaded, boolean labelIndex, boolean ancestorBitmaps) {
+		g = loaded.g;
+		V = g.V();
+		synset = loaded.synset;
+		nouns = loaded.nouns;
+
+		int[] order = validate(g);
+
+		hyponyms = g.reverse();
+		search = ThreadLocal.withInitial(() -> new AncestralSearch(g));
+		compressChains();
+		reach = new ReachabilityIndex(g);
+		if (labelIndex) {
+			labels = new AncestorLabelIndex(g, order);
 		}
+		if (ancestorBitmaps) {
+			closure = new AncestorBitmapIndex(g, order);
+		}
+	}
 
-		// Graph should not contain a cycle.
-		if (checkAcyclic()) {
-			throw new IllegalArgumentException("Input directed graph contains at least a cycle.");
+	// Restores a WordNet from the parts of a snapshot.
+	private WordNet(WordNetSnapshot snapshot) {
+		g = snapshot.g;
+		V = g.V();
+		synset = snapshot.synset;
+		nouns = snapshot.nouns;
+		hyponyms = g.reverse();
+		search = ThreadLocal.withInitial(() -> new AncestralSearch(g));
+		compressChains();
+		reach = new ReachabilityIndex(g);
+	}
+
+	// Builds the chain-compressed graph if most synsets sit inside chains.
+	private void compressChains() {
+		if (ChainDigraph.worthwhile(g)) {
+			ChainDigraph compressed = new ChainDigraph(g);
+			chains = compressed;
+			chainSearch = ThreadLocal.withInitial(() -> new ChainSearch(compressed));
 		}
 	}
 
+	/**
+	 * Writes the hypernym graph, synsets and noun index to one binary file that
+	 * {@link #openSnapshot(Path)} maps back without parsing any text.
+	 * 
+	 * @param file the snapshot file to create or overwrite
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writeSnapshot(Path file) throws IOException {
+		WordNetSnapshot.write(file, g, synset, nouns.compact());
+	}
+
+	/**
+	 * Loads a WordNet from a file written by {@link #writeSnapshot(Path)}. The
+	 * file is memory mapped and its sections are bulk copied; the graph was
+	 * validated when the snapshot was taken and is not checked again.
+	 * 
+	 * @param file the snapshot file
+	 * @return the restored WordNet
+	 * @throws IOException if the file cannot be read
+	 * @throws IllegalArgumentException if the file is not a snapshot or its
+	 *                                  header does not match its length
+	 */
+	public static WordNet openSnapshot(Path file) throws IOException {
+		return new WordNet(WordNetSnapshot.read(file));
+	}
+
+	// The reachability index behind isHypernym() with its build time and footprint.
+	public ReachabilityIndex reachabilityIndex() {
+		return reach;
+	}
+
+	// The ancestor bitmap index with its build time and footprint; null if not built.
+	public AncestorBitmapIndex ancestorBitmapIndex() {
+		return closure;
+	}
+
+	// The ancestor label index with its build time and footprint; null if not built.
+	public AncestorLabelIndex labelIndex() {
+		return labels;
+	}
+
+	/**
+	 * Keeps the ancestor labels of up to capacity frequently queried nouns, so
+	 * distance() and sap() run one BFS when either noun is hot and none when
+	 * both are. Unused with the label index, which already holds every label.
+	 * 
+	 * @param capacity maximum number of labels, or 0 to turn the cache off
+	 */
+	public void setHotLabels(int capacity) {
+		hot = capacity == 0 ? null : new HotLabelCache(capacity, nouns.count());
+	}
+
+	// The hot noun label cache with its counters; null if disabled.
+	public HotLabelCache hotLabels() {
+		return hot;
+	}
+
+	/**
+	 * Turns per-query instrumentation of distance() and sap() on, or off with
+	 * null. Queries answered from the label index record no traversal.
+	 * 
+	 * @param metrics where to record, or null to stop recording
+	 */
+	public void setMetrics(QueryMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	// The metrics being recorded; null if instrumentation is off.
+	public QueryMetrics metrics() {
+		return metrics;
+	}
+
+	@Override
 	public Iterable<String> nouns() {
-		return nouns.keySet();
+		return nouns.nouns();
 	}
 
+	@Override
 	public boolean isNoun(String word) {
-		return nouns.containsKey(word);
+		return nouns.find(word) >= 0;
 	}
 
+	@Override
 	public int distance(String nounA, String nounB) {
-		if (!isNoun(nounA) || !isNoun(nounB)) {
+		int a = nouns.find(nounA);
+		int b = nouns.find(nounB);
+		if (a < 0 || b < 0) {
 			throw new IllegalArgumentException("Must pass wordnet nouns to distance()");
 		}
-		int vertexA = nouns.get(nounA);
-		int vertexB = nouns.get(nounB);
 
-		return findLCA(vertexA, vertexB)[1];
+		return PairCache.length(findLCA(a, b));
 	}
 
+	@Override
 	public String sap(String nounA, String nounB) {
-		if (!isNoun(nounA) || !isNoun(nounB)) {
+		int a = nouns.find(nounA);
+		int b = nouns.find(nounB);
+		if (a < 0 || b < 0) {
 			throw new IllegalArgumentException("Must pass wordnet nouns to sap()");
 		}
-		int vertexA = nouns.get(nounA);
-		int vertexB = nouns.get(nounB);
-		return synset.get(findLCA(vertexA, vertexB)[0]);
+		return synset.get(PairCache.ancestor(findLCA(a, b)));
 	}
 
 	/**
-	 * Use 2-way BFS to find the index of the shortest ancestor wordnet and the
-	 * distance between the two wordnets.
+	 * Returns whether some sense of hyponym is a kind of some sense of
+	 * hypernym, that is, one of the hypernym's synsets is reached by following
+	 * zero or more hypernym edges from one of the hyponym's synsets. Most pairs
+	 * are settled by the reachability index without touching the graph.
 	 * 
-	 * @param vA vertex of the first wordnet
-	 * @param vB vertex of the second wordnet
-	 * @return [index of the SAP wordnet, length of the path]
+	 * @param hyponym  a WordNet noun
+	 * @param hypernym a WordNet noun
+	 * @return true if hyponym is-a hypernym
 	 */
-	private int[] findLCA(int vA, int vB) {
-		Map<Integer, Integer> mapA = shortestPaths(vA);
-		Map<Integer, Integer> mapB = shortestPaths(vB);
-		int minDist = Integer.MAX_VALUE;
-		int minNode = -1;
-		for (int i = 0; i < V; i ++) {
-			if (!mapA.containsKey(i) || !mapB.containsKey(i)) {
-				continue;
-			}
-			int dist = mapA.get(i) + mapB.get(i);
-			if (dist < minDist) {
-				minDist = dist;
-				minNode = i;
-			}
+	@Override
+	public boolean isHypernym(String hyponym, String hypernym) {
+		int a = nouns.find(hyponym);
+		int b = nouns.find(hypernym);
+		if (a < 0 || b < 0) {
+			throw new IllegalArgumentException("Must pass wordnet nouns to isHypernym()");
 		}
-		return minNode >= 0 ? new int[] { minNode , minDist } : new int[] { -1, -1 };
-	}
-	
-	private Map<Integer, Integer> shortestPaths(int a) {
-		Map<Integer, Integer> shortest = new HashMap<>();
-		Queue<Integer> q = new LinkedList<Integer>();
-		q.add(a);
-		shortest.put(a, 0);
-		while (!q.isEmpty()) {
-			Integer node = q.poll();
-			for (Integer next : adj.get(node)) {
-				if (!shortest.containsKey(next)) { 
-					q.add(next);
-					shortest.put(next, shortest.get(node) + 1);
+		int[] aIds = nouns.synsetIds(a);
+		int[] bIds = nouns.synsetIds(b);
+		for (int i = nouns.synsetFrom(a); i < nouns.synsetTo(a); i++) {
+			for (int j = nouns.synsetFrom(b); j < nouns.synsetTo(b); j++) {
+				if (reach.reaches(g, aIds[i], bIds[j])) {
+					return true;
 				}
 			}
 		}
-		return shortest;
+		return false;
+	}
+
+	/**
+	 * Returns every synset that is a hypernym, direct or not, of some sense of
+	 * both nouns, a sense itself included. With the ancestor bitmap index this
+	 * is a bitmap intersection; without it, one BFS up from each noun.
+	 * 
+	 * @param nounA a WordNet noun
+	 * @param nounB a WordNet noun
+	 * @return the common hypernym synsets in synset id order
+	 */
+	@Override
+	public List<String> commonHypernyms(String nounA, String nounB) {
+		int a = nouns.find(nounA);
+		int b = nouns.find(nounB);
+		if (a < 0 || b < 0) {
+			throw new IllegalArgumentException("Must pass wordnet nouns to commonHypernyms()");
+		}
+		List<String> common = new ArrayList<>();
+		for (int v : commonSynsets(a, b)) {
+			common.add(synset.get(v));
+		}
+		return common;
+	}
+
+	/**
+	 * Returns the number of synsets commonHypernyms() would return, without
+	 * materializing them when the ancestor bitmap index is built.
+	 * 
+	 * @param nounA a WordNet noun
+	 * @param nounB a WordNet noun
+	 * @return the number of common hypernym synsets
+	 */
+	@Override
+	public int commonHypernymCount(String nounA, String nounB) {
+		int a = nouns.find(nounA);
+		int b = nouns.find(nounB);
+		if (a < 0 || b < 0) {
+			throw new IllegalArgumentException("Must pass wordnet nouns to commonHypernymCount()");
+		}
+		if (closure != null) {
+			return closure.commonCount(nouns.synsetsOf(a), nouns.synsetsOf(b));
+		}
+		return commonSynsets(a, b).length;
+	}
+
+	// Ids of the common hypernyms of two nouns, ascending.
+	private int[] commonSynsets(int nounA, int nounB) {
+		if (closure != null) {
+			return closure.common(nouns.synsetsOf(nounA), nouns.synsetsOf(nounB));
+		}
+		return AncestorLabel.common(search().label(nouns.synsetsOf(nounA)), search().label(nouns.synsetsOf(nounB)));
 	}
 
 	/**
-	 * Returns true if the input graph contains a cycle.
+	 * Finds the k nouns closest to a noun by SAP distance without computing
+	 * the distance to every noun. A best-first search climbs from the noun's
+	 * synsets and walks down the hyponym edges of every ancestor it reaches,
+	 * so synsets are settled in order of total path length and the search
+	 * stops once k other nouns have been seen.
 	 * 
-	 * @return
+	 * @param noun a WordNet noun
+	 * @param k    number of nouns to return
+	 * @return up to k nouns other than noun, nearest first
 	 */
-	private boolean checkAcyclic() {
-		// Stores nodes that are already checked and that its descendent graph
-		// does not link to a cycle.
-		boolean[] visited = new boolean[V];
-		for (int i = 0; i < V; i++) {
-			if (visited[i]) {
-				continue;
+	@Override
+	public List<String> nearest(String noun, int k) {
+		int n = nouns.find(noun);
+		if (n < 0) {
+			throw new IllegalArgumentException("Must pass wordnet nouns to nearest()");
+		}
+		if (k < 0) {
+			throw new IllegalArgumentException("k must not be negative.");
+		}
+		Set<String> nearest = new LinkedHashSet<>();
+		if (k == 0) {
+			return new ArrayList<>(nearest);
+		}
+		search().nearest(nouns.synsetsOf(n), hyponyms, v -> {
+			for (String word : synset.get(v).split(" ")) {
+				if (!word.isEmpty() && !word.equals(noun) && nearest.add(word) && nearest.size() == k) {
+					return false;
+				}
 			}
-			Stack<Integer> nodes = new Stack<>();
-			if (checkAcyclicDfs(i, nodes, visited)) {
+			return true;
+		});
+		return new ArrayList<>(nearest);
+	}
+
+	/**
+	 * Adds a synset below the given hypernyms and indexes its nouns. The new
+	 * synset has no hyponyms, so only its own label is computed.
+	 * <p>
+	 * Updates must not run concurrently with queries on this WordNet.
+	 * 
+	 * @param words     the synset's nouns separated by spaces
+	 * @param hypernyms ids of the synset's hypernyms; at least one, so the DAG
+	 *                  keeps a single root
+	 * @return the id of the new synset
+	 */
+	public int addSynset(String words, int... hypernyms) {
+		if (words == null || words.isBlank()) {
+			throw new IllegalArgumentException("A synset needs at least one noun.");
+		}
+		if (hypernyms == null || hypernyms.length == 0) {
+			throw new IllegalArgumentException("A new synset needs a hypernym to keep a single root.");
+		}
+		int[] parents = Arrays.stream(hypernyms).distinct().toArray();
+		for (int parent : parents) {
+			validateSynset(parent);
+		}
+		int v = V;
+		int[] from = new int[parents.length];
+		Arrays.fill(from, v);
+		g = g.withEdges(V + 1, from, parents);
+		hyponyms = hyponyms.withEdges(V + 1, parents, from);
+		chains = null;
+		chainSearch = null; // Lets every thread's scratch over the old chains be collected.
+		V++;
+		synset.add(words);
+		for (String noun : words.trim().split(" +")) {
+			nouns.add(noun, v);
+		}
+		reach.relabel(g, new int[] { v });
+		if (closure != null) {
+			closure.relabel(g, new int[] { v });
+		}
+		if (labels != null) {
+			labels.relabel(g, new int[] { v });
+		}
+		if (hot != null) {
+			// The new leaf only adds a source to its own nouns, whose largest
+			// synset it is; every other label still holds.
+			hot.grow(nouns.count());
+			hot.invalidate(n -> nouns.synsetIds(n)[nouns.synsetTo(n) - 1] == v);
+		}
+		return v;
+	}
+
+	/**
+	 * Adds an edge from a synset to a new hypernym. Only the synset and its
+	 * descendants gain ancestors, so only their labels are rebuilt.
+	 * <p>
+	 * Updates must not run concurrently with queries on this WordNet.
+	 * 
+	 * @param hyponym  id of the synset gaining the hypernym
+	 * @param hypernym id of the hypernym
+	 * @throws IllegalArgumentException if the edge would create a cycle
+	 */
+	public void addHypernym(int hyponym, int hypernym) {
+		validateSynset(hyponym);
+		validateSynset(hypernym);
+		if (g.hasEdge(hyponym, hypernym)) {
+			return;
+		}
+		// The edge closes a cycle exactly when the hypernym lies below the hyponym.
+		int[] affected = descendants(hyponym);
+		if (mark[hypernym] == markEpoch) {
+			throw new IllegalArgumentException(
+					"Hypernym " + hyponym + "->" + hypernym + " would create a cycle.");
+		}
+		g = g.withEdges(V, new int[] { hyponym }, new int[] { hypernym });
+		hyponyms = hyponyms.withEdges(V, new int[] { hypernym }, new int[] { hyponym });
+		chains = null;
+		chainSearch = null;
+		reach.relabel(g, affected);
+		if (closure != null) {
+			closure.relabel(g, affected);
+		}
+		if (labels != null) {
+			labels.relabel(g, affected);
+		}
+		if (hot != null) {
+			// Only nouns with a synset among the marked descendants gain ancestors.
+			hot.invalidate(this::reachedByDescendants);
+		}
+	}
+
+	// Whether a synset of noun n was marked by the last descendants() walk.
+	private boolean reachedByDescendants(int n) {
+		int[] ids = nouns.synsetIds(n);
+		for (int i = nouns.synsetFrom(n); i < nouns.synsetTo(n); i++) {
+			if (mark[ids[i]] == markEpoch) {
 				return true;
 			}
 		}
 		return false;
 	}
 
-	private boolean checkAcyclicDfs(int node, Stack<Integer> nodes, boolean[] visited) {
-		if (nodes.contains(node)) {
-			return true;
+	/**
+	 * Walks down the hyponym edges from root with an iterative DFS, marking
+	 * every synset reached.
+	 * 
+	 * @return root and its descendants in reverse postorder, which puts every
+	 *         synset after all of its hypernyms among them
+	 */
+	private int[] descendants(int root) {
+		if (mark == null || mark.length < V || markEpoch == Integer.MAX_VALUE) {
+			mark = new int[V + (V >> 3)];
+			markEpoch = 0;
+		}
+		markEpoch++;
+		int[] offsets = hyponyms.offsets;
+		int[] targets = hyponyms.targets;
+		int[] stack = new int[16];
+		int[] next = new int[16]; // next[d] = next edge to follow from stack[d].
+		int[] post = new int[16];
+		int count = 0;
+		int depth = 0;
+		stack[0] = root;
+		next[0] = offsets[root];
+		mark[root] = markEpoch;
+		while (depth >= 0) {
+			int v = stack[depth];
+			if (next[depth] < offsets[v + 1]) {
+				int w = targets[next[depth]++];
+				if (mark[w] != markEpoch) {
+					mark[w] = markEpoch;
+					if (++depth == stack.length) {
+						stack = Arrays.copyOf(stack, depth * 2);
+						next = Arrays.copyOf(next, depth * 2);
+					}
+					stack[depth] = w;
+					next[depth] = offsets[w];
+				}
+			} else {
+				if (count == post.length) {
+					post = Arrays.copyOf(post, count * 2);
+				}
+				post[count++] = v;
+				depth--;
+			}
 		}
-		if (visited[node]) {
-			return false;
+		int[] order = new int[count];
+		for (int i = 0; i < count; i++) {
+			order[i] = post[count - 1 - i];
 		}
-		visited[node] = true;
-		nodes.push(node);
-		for (int adjcent : adj.get(node)) {
-			if (checkAcyclicDfs(adjcent, nodes, visited)) {
-				return true;
+		return order;
+	}
+
+	private void validateSynset(int v) {
+		if (v < 0 || v >= V) {
+			throw new IllegalArgumentException("Synset " + v + " is not between 0 and " + (V - 1));
+		}
+	}
+
+	// This thread's search scratch, pointed at the current graph after updates.
+	private AncestralSearch search() {
+		AncestralSearch local = search.get();
+		if (local.graph() != g) {
+			local.retarget(g);
+		}
+		return local;
+	}
+
+	/**
+	 * Runs one BFS up from every synset of the noun and returns each hypernym
+	 * reached with its distance, so callers comparing one noun against many
+	 * others can merge labels instead of searching the graph per pair.
+	 * 
+	 * @param noun a WordNet noun
+	 * @return the ancestor label of the noun's synsets
+	 */
+	@Override
+	public AncestorLabel ancestorLabel(String noun) {
+		int n = nouns.find(noun);
+		if (n < 0) {
+			throw new IllegalArgumentException("Must pass wordnet nouns to ancestorLabel()");
+		}
+		if (labels != null) {
+			return labels.label(nouns.synsetsOf(n));
+		}
+		return search().label(nouns.synsetsOf(n));
+	}
+
+	/**
+	 * Use the label index, the cached labels of hot nouns, or a lockstep 2-way
+	 * BFS from every synset of both nouns, to find the index of the shortest ancestor wordnet and the
+	 * distance between the two nouns.
+	 * 
+	 * @param nounA index of the first noun
+	 * @param nounB index of the second noun
+	 * @return the packed (index of the SAP wordnet, length of the path)
+	 */
+	private long findLCA(int nounA, int nounB) {
+		QueryMetrics m = metrics;
+		long start = m == null ? 0 : System.nanoTime();
+		// Slices of the noun index, read in place.
+		int[] a = nouns.synsetIds(nounA);
+		int aFrom = nouns.synsetFrom(nounA);
+		int aTo = nouns.synsetTo(nounA);
+		int[] b = nouns.synsetIds(nounB);
+		int bFrom = nouns.synsetFrom(nounB);
+		int bTo = nouns.synsetTo(nounB);
+		if (labels != null) {
+			long best = PairCache.pack(-1, -1);
+			for (int i = aFrom; i < aTo; i++) {
+				for (int j = bFrom; j < bTo; j++) {
+					long packed = labels.meet(a[i], b[j]);
+					int length = PairCache.length(packed);
+					int bestLength = PairCache.length(best);
+					// Ties go to the smallest ancestor id, as in the searches.
+					if (length >= 0 && (bestLength < 0 || length < bestLength
+							|| (length == bestLength && PairCache.ancestor(packed) < PairCache.ancestor(best)))) {
+						best = packed;
+					}
+				}
+			}
+			if (m != null) {
+				m.record(System.nanoTime() - start, 0, 0);
 			}
+			return best;
 		}
-		nodes.pop();
-		return false;
+		HotLabelCache h = hot;
+		if (h != null) {
+			AncestralSearch local = search();
+			long packed = h.find(nounA, a, aFrom, aTo, nounB, b, bFrom, bTo, local);
+			if (packed != PairCache.MISS) {
+				if (m != null) {
+					m.record(System.nanoTime() - start, local.dequeued(), local.relaxed());
+				}
+				return packed;
+			}
+		}
+		PathSearch local = chains != null ? chainSearch.get() : search();
+		local.find(a, aFrom, aTo, b, bFrom, bTo);
+		if (m != null) {
+			m.record(System.nanoTime() - start, local.dequeued(), local.relaxed());
+		}
+		return PairCache.pack(local.ancestor(), local.length());
+	}
+
+	/**
+	 * Checks in O(V + E) without recursion that the graph is a single-rooted
+	 * DAG: exactly one synset has no hypernym, and Kahn's in-degree algorithm
+	 * orders every synset.
+	 * 
+	 * @param g the hypernym graph
+	 * @return the synsets in topological order, hyponyms before hypernyms
+	 */
+	static int[] validate(CsrDigraph g) {
+		// Graph should contain only 1 root.
+		boolean rootFound = false;
+		for (int v = 0; v < g.V(); v++) {
+			if (g.outdegree(v) == 0) {
+				if (!rootFound) {
+					rootFound = true;
+				} else {
+					throw new IllegalArgumentException("Input not corresponding to a single-rooted DAG.");
+				}
+			}
+		}
+
+		// Graph should not contain a cycle.
+		int[] order = g.topologicalOrder();
+		if (order == null) {
+			throw new IllegalArgumentException("Input directed graph contains at least a cycle.");
+		}
+		return order;
 	}
 
 	public static void main(String[] args) {
@@ -216,6 +624,11 @@ public class WordNet {
 		System.out.println(wn.sap("academic_requirement", "achievability"));
 		System.out.println(wn.distance("abduction", "abductor"));
 		System.out.println(wn.sap("abduction", "abductor"));
+		System.out.println(wn.nearest("zucchini", 10));
+		System.out.println(wn.isHypernym("zucchini", "vegetable"));
+		System.out.println(wn.isHypernym("vegetable", "zucchini"));
+		System.out.println(wn.commonHypernyms("zucchini", "courgette"));
+		System.out.println(wn.commonHypernymCount("speech_sound", "phoenix"));
 	}
 
 }
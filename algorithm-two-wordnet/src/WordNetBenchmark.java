@@ -0,0 +1,208 @@
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntToLongFunction;
+import java.util.regex.Pattern;
+
+import edu.princeton.cs.algs4.Digraph;
+import edu.princeton.cs.algs4.In;
+
+/**
+ * Regression benchmarks for SAP, SAP_old and WordNet.distance over the graph
+ * inputs in resources/wordnet.
+ * <p>
+ * Each benchmark runs timed warmup iterations and then timed measurement
+ * iterations on a fixed seeded workload, feeding every result into a sink so
+ * the JIT cannot drop the work, and reports the mean time per operation with
+ * a 99.9% confidence interval across iterations, in the style of a JMH
+ * average-time run. An optional regular expression argument selects the
+ * benchmarks whose "name input" matches it.
+ */
+public class WordNetBenchmark {
+	private final static String path = "resources/wordnet/";
+
+	private static final String[] INPUTS = { "hypernyms100-subgraph.txt", "hypernyms500-subgraph.txt",
+			"hypernyms1000-subgraph.txt", "hypernyms5000-subgraph.txt", "hypernyms10000-subgraph.txt",
+			"hypernyms50000-subgraph.txt", "hypernyms.txt", "digraph-wordnet.txt" };
+
+	private static final int WARMUP_ITERATIONS = 5;
+	private static final int MEASURE_ITERATIONS = 10;
+	private static final long ITERATION_NANOS = 200_000_000L;
+	private static final long SEED = 42;
+	private static final int QUERIES = 4096; // Size of every query workload, used round-robin.
+	private static final int SET_SIZE = 5; // Vertices per side of a multi-source query.
+	private static final int BATCH = 1024; // Pairs per batch call.
+
+	private static long sink; // Consumes every result.
+
+	private final Pattern filter;
+
+	private WordNetBenchmark(Pattern filter) {
+		this.filter = filter;
+	}
+
+	/**
+	 * Times op(0), op(1), ... for the warmup and then the measurement
+	 * iterations, and prints one result row.
+	 *
+	 * @param name        benchmark name
+	 * @param input       input file the workload was built from
+	 * @param opsPerCall  operations done by one call of op, to report per-operation time
+	 * @param op          the measured operation; its result goes to the sink
+	 */
+	private void run(String name, String input, int opsPerCall, IntToLongFunction op) {
+		if (filter != null && !filter.matcher(name + " " + input).find()) {
+			return;
+		}
+		int call = 0;
+		double[] score = new double[MEASURE_ITERATIONS];
+		for (int iteration = -WARMUP_ITERATIONS; iteration < MEASURE_ITERATIONS; iteration++) {
+			long calls = 0;
+			long begin = System.nanoTime();
+			long elapsed;
+			do {
+				sink += op.applyAsLong(call++);
+				calls++;
+				elapsed = System.nanoTime() - begin;
+			} while (elapsed < ITERATION_NANOS);
+			if (iteration >= 0) {
+				score[iteration] = elapsed / 1e3 / (calls * opsPerCall);
+			}
+		}
+		double mean = 0;
+		for (double s : score) {
+			mean += s;
+		}
+		mean /= score.length;
+		double variance = 0;
+		for (double s : score) {
+			variance += (s - mean) * (s - mean);
+		}
+		// Student's t for 9 degrees of freedom at 99.9%.
+		double error = 4.781 * Math.sqrt(variance / (score.length - 1)) / Math.sqrt(score.length);
+		System.out.printf("%-22s %-28s avgt %3d %14.3f +- %11.3f us/op%n", name, input, MEASURE_ITERATIONS, mean,
+				error);
+	}
+
+	// Reads a digraph file, or a hypernyms file with one vertex per id seen.
+	private static Digraph digraph(String input) {
+		if (input.startsWith("digraph")) {
+			return new Digraph(new In(path + input));
+		}
+		List<int[]> edges = new ArrayList<>();
+		int V = 0;
+		In in = new In(path + input);
+		for (String line = in.readLine(); line != null; line = in.readLine()) {
+			String[] ids = line.split(",");
+			int v = Integer.parseInt(ids[0]);
+			V = Math.max(V, v + 1);
+			for (int i = 1; i < ids.length; i++) {
+				int w = Integer.parseInt(ids[i]);
+				V = Math.max(V, w + 1);
+				edges.add(new int[] { v, w });
+			}
+		}
+		Digraph G = new Digraph(V);
+		for (int[] edge : edges) {
+			G.addEdge(edge[0], edge[1]);
+		}
+		return G;
+	}
+
+	// The synsets file matching a hypernyms file, or null if there is none.
+	private static String synsets(String input) {
+		if (!input.startsWith("hypernyms")) {
+			return null;
+		}
+		String synsets = path + input.replaceFirst("^hypernyms", "synsets");
+		return Files.isRegularFile(Paths.get(synsets)) ? synsets : null;
+	}
+
+	private void sap(String input) {
+		Digraph G = digraph(input);
+		int V = G.V();
+		Random random = new Random(SEED);
+		int[] v = new int[QUERIES];
+		int[] w = new int[QUERIES];
+		List<List<Integer>> vSets = new ArrayList<>();
+		List<List<Integer>> wSets = new ArrayList<>();
+		for (int i = 0; i < QUERIES; i++) {
+			v[i] = random.nextInt(V);
+			w[i] = random.nextInt(V);
+			List<Integer> vSet = new ArrayList<>();
+			List<Integer> wSet = new ArrayList<>();
+			for (int j = 0; j < SET_SIZE; j++) {
+				vSet.add(random.nextInt(V));
+				wSet.add(random.nextInt(V));
+			}
+			vSets.add(vSet);
+			wSets.add(wSet);
+		}
+		int[][] vBatches = new int[QUERIES / BATCH][];
+		int[][] wBatches = new int[QUERIES / BATCH][];
+		for (int b = 0; b < vBatches.length; b++) {
+			vBatches[b] = Arrays.copyOfRange(v, b * BATCH, (b + 1) * BATCH);
+			wBatches[b] = Arrays.copyOfRange(w, b * BATCH, (b + 1) * BATCH);
+		}
+
+		run("SAP.construct", input, 1, i -> System.identityHashCode(new SAP(G)));
+		run("SAP_old.construct", input, 1, i -> System.identityHashCode(new SAP_old(G)));
+
+		SAP sap = new SAP(G);
+		SAP_old old = new SAP_old(G);
+		run("SAP.length", input, 1, i -> sap.length(v[i % QUERIES], w[i % QUERIES]));
+		run("SAP_old.length", input, 1, i -> old.length(v[i % QUERIES], w[i % QUERIES]));
+		run("SAP.lengthSets", input, 1, i -> sap.length(vSets.get(i % QUERIES), wSets.get(i % QUERIES)));
+		run("SAP_old.lengthSets", input, 1, i -> old.length(vSets.get(i % QUERIES), wSets.get(i % QUERIES)));
+		run("SAP.lengths", input, BATCH, i -> {
+			int[] lengths = sap.lengths(vBatches[i % vBatches.length], wBatches[i % wBatches.length]);
+			return lengths[lengths.length - 1];
+		});
+		run("SAP_old.lengths", input, BATCH, i -> {
+			int[] vBatch = vBatches[i % vBatches.length];
+			int[] wBatch = wBatches[i % wBatches.length];
+			long sum = 0;
+			for (int j = 0; j < BATCH; j++) {
+				sum += old.length(vBatch[j], wBatch[j]);
+			}
+			return sum;
+		});
+	}
+
+	private void wordnet(String input) {
+		String synsets = synsets(input);
+		if (synsets == null) {
+			return;
+		}
+		String hypernyms = path + input;
+		WordNet wn = new WordNet(synsets, hypernyms);
+		List<String> nouns = new ArrayList<>();
+		for (String noun : wn.nouns()) {
+			nouns.add(noun);
+		}
+		Random random = new Random(SEED);
+		String[] a = new String[QUERIES];
+		String[] b = new String[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			a[i] = nouns.get(random.nextInt(nouns.size()));
+			b[i] = nouns.get(random.nextInt(nouns.size()));
+		}
+
+		run("WordNet.construct", input, 1, i -> System.identityHashCode(new WordNet(synsets, hypernyms)));
+		run("WordNet.distance", input, 1, i -> wn.distance(a[i % QUERIES], b[i % QUERIES]));
+	}
+
+	public static void main(String[] args) {
+		WordNetBenchmark benchmark = new WordNetBenchmark(args.length > 0 ? Pattern.compile(args[0]) : null);
+		System.out.printf("%-22s %-28s mode cnt %14s    %11s units%n", "Benchmark", "Input", "Score", "Error");
+		for (String input : INPUTS) {
+			benchmark.sap(input);
+			benchmark.wordnet(input);
+		}
+		// Printing the sink keeps every measured result observable.
+		System.out.println("sink " + sink);
+	}
+}
@@ -0,0 +1,166 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.princeton.cs.algs4.In;
+
+/**
+ * Drives a {@link WordNetServer} on this machine and reports throughput and
+ * latency percentiles.
+ * <p>
+ * Every connection writes a pipelined batch of random requests, mostly
+ * distance with some sap, isNoun and outcast, then reads the whole batch of
+ * responses before sending the next one. A request's latency runs from the
+ * batch being flushed to its own response line arriving. Requests finished
+ * during the warmup are not counted.
+ */
+public class WordNetLoadGenerator {
+	private final static String path = "resources/wordnet/";
+
+	private static final long WARMUP_NANOS = 2_000_000_000L;
+	private static final int OUTCAST_NOUNS = 5;
+
+	private final int port;
+	private final String[] nouns;
+	private final int depth;
+	private final Histogram latency = new Histogram();
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+
+	private WordNetLoadGenerator(int port, String[] nouns, int depth) {
+		this.port = port;
+		this.nouns = nouns;
+		this.depth = depth;
+	}
+
+	// Every noun of a synsets file.
+	private static String[] nouns(String synsets) {
+		List<String> nouns = new ArrayList<>();
+		In in = new In(synsets);
+		for (String line = in.readLine(); line != null; line = in.readLine()) {
+			for (String noun : line.split(",")[1].split(" ")) {
+				nouns.add(noun);
+			}
+		}
+		return nouns.toArray(new String[0]);
+	}
+
+	private String request(Random random) {
+		int kind = random.nextInt(20);
+		String a = nouns[random.nextInt(nouns.length)];
+		String b = nouns[random.nextInt(nouns.length)];
+		if (kind < 16) {
+			return "distance " + a + " " + b;
+		}
+		if (kind < 18) {
+			return "sap " + a + " " + b;
+		}
+		if (kind < 19) {
+			return "isNoun " + a;
+		}
+		StringBuilder outcast = new StringBuilder("outcast");
+		for (int i = 0; i < OUTCAST_NOUNS; i++) {
+			outcast.append(' ').append(nouns[random.nextInt(nouns.length)]);
+		}
+		return outcast.toString();
+	}
+
+	// Sends batches on one connection until the deadline.
+	private void drive(long seed, long measureFrom, long deadline) {
+		Random random = new Random(seed);
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+				BufferedReader in = new BufferedReader(
+						new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 1 << 16);
+				Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8),
+						1 << 16)) {
+			socket.setTcpNoDelay(true);
+			while (System.nanoTime() < deadline) {
+				for (int i = 0; i < depth; i++) {
+					out.write(request(random));
+					out.write('\n');
+				}
+				out.flush();
+				long sent = System.nanoTime();
+				for (int i = 0; i < depth; i++) {
+					String response = in.readLine();
+					if (response == null) {
+						throw new IOException("Server closed the connection.");
+					}
+					long now = System.nanoTime();
+					if (sent >= measureFrom) {
+						latency.record(now - sent);
+						requests.increment();
+						if (!response.startsWith("OK ")) {
+							errors.increment();
+						}
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Runs the load and prints one result line.
+	 *
+	 * @param connections concurrent connections
+	 * @param seconds     measured seconds, after the warmup
+	 */
+	private void run(int connections, int seconds) throws InterruptedException {
+		long measureFrom = System.nanoTime() + WARMUP_NANOS;
+		long deadline = measureFrom + seconds * 1_000_000_000L;
+		List<Thread> threads = new ArrayList<>();
+		for (int c = 0; c < connections; c++) {
+			long seed = c;
+			threads.add(new Thread(() -> drive(seed, measureFrom, deadline), "load-" + c));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		System.out.printf("connections=%d depth=%d requests=%d errors=%d throughput=%.0f req/s "
+				+ "latency p50/p99/max=%.1f/%.1f/%.1f us%n", connections, depth, requests.sum(), errors.sum(),
+				requests.sum() / (double) seconds, latency.percentile(50) / 1e3, latency.percentile(99) / 1e3,
+				latency.max() / 1e3);
+	}
+
+	/**
+	 * Loads a server on this machine.
+	 *
+	 * @param args port of a running server, or 0 to start one in this JVM;
+	 *             then connections, pipeline depth and measured seconds
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+		int connections = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int depth = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+		int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+		WordNetServer server = null;
+		if (port == 0) {
+			server = new WordNetServer(new WordNet(path + "synsets.txt", path + "hypernyms.txt"), 0);
+			port = server.port();
+		}
+		try {
+			new WordNetLoadGenerator(port, nouns(path + "synsets.txt"), depth).run(connections, seconds);
+		} finally {
+			if (server != null) {
+				server.close();
+			}
+		}
+	}
+
+}
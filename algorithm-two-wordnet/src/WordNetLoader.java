@@ -0,0 +1,328 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import edu.princeton.cs.algs4.In;
+
+/**
+ * Parses synsets and hypernyms files in parallel.
+ * <p>
+ * Each file is split into byte ranges whose boundaries are moved forward to
+ * the next newline, and every range is parsed on the common ForkJoinPool into
+ * primitive arrays. Chunks of both files are parsed at the same time; the
+ * results are then merged in file order into the graph, the synset texts and
+ * the noun index. An id that is not a plain decimal number, an empty field or
+ * a synset without nouns is rejected with its byte offset in the file.
+ */
+class WordNetLoader {
+
+	// Smallest byte range worth its own task.
+	private static final int MIN_CHUNK = 1 << 16;
+
+	final CsrDigraph g;
+	final SynsetText synset;
+	final NounIndex nouns;
+
+	private WordNetLoader(CsrDigraph g, SynsetText synset, NounIndex nouns) {
+		this.g = g;
+		this.synset = synset;
+		this.nouns = nouns;
+	}
+
+	static WordNetLoader load(String synsets, String hypernyms) {
+		ByteBuffer synsetBytes = read(synsets);
+		ByteBuffer hypernymBytes = read(hypernyms);
+		List<SynsetChunk> synsetChunks = new ArrayList<>();
+		for (int[] range : split(synsetBytes)) {
+			synsetChunks.add(new SynsetChunk(synsetBytes, range[0], range[1], synsets));
+		}
+		List<HypernymChunk> hypernymChunks = new ArrayList<>();
+		for (int[] range : split(hypernymBytes)) {
+			hypernymChunks.add(new HypernymChunk(hypernymBytes, range[0], range[1], hypernyms));
+		}
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		for (SynsetChunk chunk : synsetChunks) {
+			tasks.add(ForkJoinPool.commonPool().submit(chunk));
+		}
+		for (HypernymChunk chunk : hypernymChunks) {
+			tasks.add(ForkJoinPool.commonPool().submit(chunk));
+		}
+		for (ForkJoinTask<?> task : tasks) {
+			task.join();
+		}
+		// Report the first malformed line of each file.
+		for (LineChunk chunk : synsetChunks) {
+			if (chunk.error != null) {
+				throw chunk.error;
+			}
+		}
+		for (LineChunk chunk : hypernymChunks) {
+			if (chunk.error != null) {
+				throw chunk.error;
+			}
+		}
+
+		// Merge synsets in file order.
+		int V = 0;
+		for (SynsetChunk chunk : synsetChunks) {
+			V += chunk.count;
+		}
+		int[] length = new int[V];
+		Arrays.fill(length, -1);
+		for (SynsetChunk chunk : synsetChunks) {
+			for (int i = 0; i < chunk.count; i++) {
+				int id = chunk.ids[i];
+				if (id < 0 || id >= V) {
+					throw new IllegalArgumentException("Synset id " + id + " is not between 0 and " + (V - 1));
+				}
+				length[id] = chunk.textStart[i + 1] - chunk.textStart[i];
+			}
+		}
+		int[] offsets = new int[V + 1];
+		for (int v = 0; v < V; v++) {
+			if (length[v] < 0) {
+				throw new IllegalArgumentException("Missing synset " + v);
+			}
+			offsets[v + 1] = offsets[v] + length[v];
+		}
+		byte[] text = new byte[offsets[V]];
+		NounIndex.Builder nouns = new NounIndex.Builder();
+		for (SynsetChunk chunk : synsetChunks) {
+			for (int i = 0; i < chunk.count; i++) {
+				int id = chunk.ids[i];
+				int from = chunk.textStart[i];
+				int to = chunk.textStart[i + 1];
+				System.arraycopy(chunk.text, from, text, offsets[id], to - from);
+				// Words are separated by single spaces.
+				for (int word = from, j = from; j <= to; j++) {
+					if (j == to || chunk.text[j] == ' ') {
+						if (j > word) {
+							nouns.add(chunk.text, word, j - word, id);
+						}
+						word = j + 1;
+					}
+				}
+			}
+		}
+
+		// Merge edges in file order.
+		int E = 0;
+		for (HypernymChunk chunk : hypernymChunks) {
+			E += chunk.count;
+		}
+		int[] from = new int[E];
+		int[] to = new int[E];
+		int e = 0;
+		for (HypernymChunk chunk : hypernymChunks) {
+			for (int i = 0; i < chunk.count; i++, e++) {
+				from[e] = chunk.from[i];
+				to[e] = chunk.to[i];
+				if (from[e] < 0 || from[e] >= V || to[e] < 0 || to[e] >= V) {
+					throw new IllegalArgumentException("Hypernym edge " + from[e] + "->" + to[e] + " is out of range");
+				}
+			}
+		}
+		return new WordNetLoader(new CsrDigraph(V, from, to, E), new SynsetText(text, offsets, V),
+				nouns.build());
+	}
+
+	// Maps a file when the name is a local path, otherwise reads it through In.
+	private static ByteBuffer read(String name) {
+		Path file = Paths.get(name);
+		if (!Files.isRegularFile(file)) {
+			return ByteBuffer.wrap(new In(name).readAll().getBytes(StandardCharsets.UTF_8));
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// Byte ranges [start, end) that cover the buffer and each end after a newline.
+	private static List<int[]> split(ByteBuffer bytes) {
+		int size = bytes.limit();
+		int chunks = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism() * 4, size / MIN_CHUNK));
+		List<int[]> ranges = new ArrayList<>();
+		int start = 0;
+		for (int k = 1; k <= chunks && start < size; k++) {
+			int end = k == chunks ? size : Math.max(start, (int) ((long) size * k / chunks));
+			while (end < size && bytes.get(end - 1) != '\n') {
+				end++;
+			}
+			if (end > start) {
+				ranges.add(new int[] { start, end });
+				start = end;
+			}
+		}
+		return ranges;
+	}
+
+	/**
+	 * Splits one byte range into lines without their line terminators and
+	 * hands each non-blank line to {@link #line}. A malformed line stops the
+	 * chunk and is kept in {@link #error}, to be thrown by the loading thread.
+	 */
+	private abstract static class LineChunk implements Runnable {
+		private final ByteBuffer bytes;
+		private final int start;
+		private final int end;
+		final String source; // File name for error messages.
+		IllegalArgumentException error; // The first malformed line; null if none.
+
+		LineChunk(ByteBuffer bytes, int start, int end, String source) {
+			this.bytes = bytes;
+			this.start = start;
+			this.end = end;
+			this.source = source;
+		}
+
+		@Override
+		public void run() {
+			byte[] line = new byte[256];
+			int pos = start;
+			try {
+				while (pos < end) {
+					int eol = pos;
+					while (eol < end && bytes.get(eol) != '\n') {
+						eol++;
+					}
+					int len = eol - pos;
+					if (len > 0 && bytes.get(eol - 1) == '\r') {
+						len--;
+					}
+					if (len > 0) {
+						if (line.length < len) {
+							line = new byte[Math.max(len, line.length * 2)];
+						}
+						bytes.get(pos, line, 0, len);
+						line(line, len, pos);
+					}
+					pos = eol + 1;
+				}
+			} catch (IllegalArgumentException e) {
+				error = e;
+			}
+		}
+
+		/**
+		 * Parses line[0..len), which starts at byte offset at of the file.
+		 *
+		 * @throws IllegalArgumentException if the line is malformed
+		 */
+		abstract void line(byte[] line, int len, int at);
+
+		/**
+		 * Parses the id in line[from..to) as Integer.parseInt would, without
+		 * accepting a sign.
+		 *
+		 * @throws IllegalArgumentException if the field is empty, holds
+		 *                                  anything but digits or overflows
+		 */
+		int id(byte[] line, int from, int to, int at) {
+			if (from >= to) {
+				throw new IllegalArgumentException("Missing id at byte " + (at + from) + " of " + source);
+			}
+			long value = 0;
+			for (int i = from; i < to; i++) {
+				int digit = line[i] - '0';
+				if (digit < 0 || digit > 9 || (value = value * 10 + digit) > Integer.MAX_VALUE) {
+					throw new IllegalArgumentException("Invalid id \""
+							+ new String(line, from, to - from, StandardCharsets.UTF_8) + "\" at byte " + (at + from)
+							+ " of " + source);
+				}
+			}
+			return (int) value;
+		}
+	}
+
+	// Parses "id,word word ...,gloss" lines of one byte range.
+	private static class SynsetChunk extends LineChunk {
+		int count;
+		int[] ids = new int[64];
+		byte[] text = new byte[1 << 12]; // UTF-8 word lists of all synsets in the chunk.
+		int[] textStart = new int[65]; // Synset i's words are text[textStart[i]..textStart[i + 1]).
+
+		SynsetChunk(ByteBuffer bytes, int start, int end, String source) {
+			super(bytes, start, end, source);
+		}
+
+		@Override
+		void line(byte[] line, int len, int at) {
+			int comma = 0;
+			while (comma < len && line[comma] != ',') {
+				comma++;
+			}
+			int id = id(line, 0, comma, at);
+			int textEnd = comma + 1;
+			while (textEnd < len && line[textEnd] != ',') {
+				textEnd++;
+			}
+			if (textEnd <= comma + 1) {
+				throw new IllegalArgumentException("Synset " + id + " has no nouns at byte " + at + " of " + source);
+			}
+			if (count == ids.length) {
+				ids = Arrays.copyOf(ids, count * 2);
+				textStart = Arrays.copyOf(textStart, count * 2 + 1);
+			}
+			int from = textStart[count];
+			int size = textEnd - comma - 1;
+			if (text.length < from + size) {
+				text = Arrays.copyOf(text, Math.max(from + size, text.length * 2));
+			}
+			System.arraycopy(line, comma + 1, text, from, size);
+			ids[count] = id;
+			textStart[++count] = from + size;
+		}
+	}
+
+	// Parses "id,hypernym,hypernym ..." lines of one byte range into edge arrays.
+	private static class HypernymChunk extends LineChunk {
+		int count;
+		int[] from = new int[256];
+		int[] to = new int[256];
+
+		HypernymChunk(ByteBuffer bytes, int start, int end, String source) {
+			super(bytes, start, end, source);
+		}
+
+		@Override
+		void line(byte[] line, int len, int at) {
+			int hyponym = -1;
+			// Ids end at ',' or at the end of the line.
+			for (int field = 0, i = 0; i <= len; i++) {
+				if (i == len || line[i] == ',') {
+					int value = id(line, field, i, at);
+					if (hyponym < 0) {
+						hyponym = value;
+					} else {
+						add(hyponym, value);
+					}
+					field = i + 1;
+				}
+			}
+		}
+
+		private void add(int source, int target) {
+			if (count == from.length) {
+				from = Arrays.copyOf(from, count * 2);
+				to = Arrays.copyOf(to, count * 2);
+			}
+			from[count] = source;
+			to[count] = target;
+			count++;
+		}
+	}
+
+}
@@ -0,0 +1,37 @@
+import java.util.List;
+
+/**
+ * The read-only queries on a WordNet, answered alike by {@link WordNet} on
+ * the heap and by {@link OffHeapWordNet}, so clients such as {@link Outcast}
+ * and {@link WordNetServer} work over either.
+ */
+public interface WordNetQueries {
+
+	// returns all WordNet nouns
+	Iterable<String> nouns();
+
+	// is the word a WordNet noun?
+	boolean isNoun(String word);
+
+	// distance between nounA and nounB
+	int distance(String nounA, String nounB);
+
+	// a synset that is the common ancestor of nounA and nounB in a shortest ancestral path
+	String sap(String nounA, String nounB);
+
+	// is some sense of hyponym a kind of some sense of hypernym?
+	boolean isHypernym(String hyponym, String hypernym);
+
+	// every synset that is a hypernym of some sense of both nouns, in synset id order
+	List<String> commonHypernyms(String nounA, String nounB);
+
+	// the number of synsets commonHypernyms() would return
+	int commonHypernymCount(String nounA, String nounB);
+
+	// up to k nouns other than noun, nearest first by SAP distance
+	List<String> nearest(String noun, int k);
+
+	// every hypernym of the noun's synsets with its distance, for merging against other nouns
+	AncestorLabel ancestorLabel(String noun);
+
+}
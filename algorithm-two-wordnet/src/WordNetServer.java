@@ -0,0 +1,181 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves one shared WordNet to other processes on the loopback interface, so
+ * the graph is loaded once per machine instead of once per JVM.
+ * <p>
+ * The protocol is UTF-8 text, one request per line and one response line per
+ * request, in request order:
+ *
+ * <pre>
+ * distance nounA nounB      OK length
+ * sap nounA nounB           OK synset words
+ * isNoun word               OK true|false
+ * outcast noun1 noun2 ...   OK outcast
+ * </pre>
+ *
+ * A request that cannot be answered gets "ERR message". Clients may pipeline:
+ * a connection's responses are buffered and only flushed once no further
+ * request is already waiting, so a batch of requests written together comes
+ * back in a few packets. Each connection is served on a virtual thread when
+ * the JVM has them and on a pooled platform thread otherwise.
+ */
+public class WordNetServer implements Closeable {
+	private final static String path = "resources/wordnet/";
+
+	private final WordNetQueries wn;
+	private final Outcast outcast;
+	private final ServerSocket server;
+	private final ExecutorService connections;
+	private final Set<Socket> open = ConcurrentHashMap.newKeySet(); // Connections being served, closed by close().
+	private final Thread acceptor;
+
+	/**
+	 * Binds the loopback interface and starts accepting connections.
+	 *
+	 * @param wordnet the WordNet to answer from, on or off the heap
+	 * @param port    the port to listen on, or 0 for any free port
+	 * @throws IOException if the port cannot be bound
+	 */
+	public WordNetServer(WordNetQueries wordnet, int port) throws IOException {
+		wn = wordnet;
+		outcast = new Outcast(wordnet);
+		server = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+		connections = connectionExecutor();
+		acceptor = new Thread(this::accept, "wordnet-server-" + server.getLocalPort());
+		acceptor.start();
+	}
+
+	// Virtual threads per connection when this JVM has them, else a growing pool.
+	private static ExecutorService connectionExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	// The port the server listens on.
+	public int port() {
+		return server.getLocalPort();
+	}
+
+	private void accept() {
+		while (!server.isClosed()) {
+			try {
+				Socket socket = server.accept();
+				socket.setTcpNoDelay(true);
+				connections.execute(() -> serve(socket));
+			} catch (IOException e) {
+				// Closed by close(), or a connection that failed while being accepted.
+			}
+		}
+	}
+
+	// Answers the requests of one connection until the client closes it.
+	private void serve(Socket socket) {
+		open.add(socket);
+		try (socket;
+				BufferedReader in = new BufferedReader(
+						new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 1 << 16);
+				Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8),
+						1 << 16)) {
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				out.write(answer(line));
+				out.write('\n');
+				if (!in.ready()) {
+					out.flush();
+				}
+			}
+		} catch (IOException e) {
+			// The client went away; there is no one left to answer.
+		} finally {
+			open.remove(socket);
+		}
+	}
+
+	/**
+	 * Answers one request line.
+	 *
+	 * @param line a request in the protocol above
+	 * @return the response line without its newline
+	 */
+	String answer(String line) {
+		String[] words = line.trim().split(" +");
+		try {
+			switch (words[0]) {
+			case "distance":
+				arguments(words, 2);
+				return "OK " + wn.distance(words[1], words[2]);
+			case "sap":
+				arguments(words, 2);
+				return "OK " + wn.sap(words[1], words[2]);
+			case "isNoun":
+				arguments(words, 1);
+				return "OK " + wn.isNoun(words[1]);
+			case "outcast":
+				if (words.length < 3) {
+					throw new IllegalArgumentException("outcast takes at least 2 nouns");
+				}
+				return "OK " + outcast.outcast(Arrays.copyOfRange(words, 1, words.length));
+			default:
+				return "ERR unknown request " + words[0];
+			}
+		} catch (IllegalArgumentException e) {
+			return "ERR " + e.getMessage();
+		}
+	}
+
+	private static void arguments(String[] words, int count) {
+		if (words.length != count + 1) {
+			throw new IllegalArgumentException(words[0] + " takes " + count + " argument" + (count == 1 ? "" : "s"));
+		}
+	}
+
+	/**
+	 * Stops accepting connections and closes the ones being served.
+	 */
+	@Override
+	public void close() throws IOException {
+		server.close();
+		for (Socket socket : open) {
+			socket.close();
+		}
+		connections.shutdownNow();
+		try {
+			acceptor.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Serves resources/wordnet on the loopback interface until the process is
+	 * killed.
+	 *
+	 * @param args optional port, 4242 by default
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 4242;
+		WordNet wn = new WordNet(path + "synsets.txt", path + "hypernyms.txt");
+		WordNetServer server = new WordNetServer(wn, port);
+		System.out.println("WordNet server listening on " + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+				+ server.port());
+	}
+
+}
@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary snapshot of a WordNet: the CSR hypernym graph, the synset strings and
+ * the noun index in one little-endian file.
+ *
+ * <pre>
+ * int magic, version, V, E, synsetBytes, nounCount, nounBytes, nounSynsets, tableSize
+ * int[V + 1]         graph offsets
+ * int[E]             graph targets
+ * int[V + 1]         synset text offsets into the synset arena
+ * int[nounCount + 1] noun offsets into the noun arena
+ * int[nounCount + 1] offsets of each noun's synsets
+ * int[nounSynsets]   synsets of all nouns
+ * int[tableSize]     noun hash table
+ * byte[synsetBytes]  UTF-8 synset arena
+ * byte[nounBytes]    UTF-8 noun arena
+ * </pre>
+ *
+ * Loading maps the file and bulk-copies each section, so no text is split or
+ * decoded, no number is parsed and the synset arena and noun index are used
+ * exactly as they were written.
+ */
+class WordNetSnapshot {
+
+	private static final int MAGIC = 0x574e5331; // "WNS1"
+	private static final int VERSION = 2;
+	private static final int HEADER_INTS = 9;
+
+	final CsrDigraph g;
+	final SynsetText synset;
+	final NounIndex nouns;
+
+	private WordNetSnapshot(CsrDigraph g, SynsetText synset, NounIndex nouns) {
+		this.g = g;
+		this.synset = synset;
+		this.nouns = nouns;
+	}
+
+	static void write(Path file, CsrDigraph g, SynsetText synset, NounIndex nouns) throws IOException {
+		ByteBuffer buf = encode(g, synset, nouns, false);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buf.hasRemaining()) {
+				channel.write(buf);
+			}
+		}
+	}
+
+	/**
+	 * Lays out a snapshot in a buffer, a direct one outside the heap if asked.
+	 *
+	 * @return the snapshot bytes, positioned at 0
+	 */
+	static ByteBuffer encode(CsrDigraph g, SynsetText synset, NounIndex nouns, boolean direct) {
+		int V = g.V();
+		int synsetBytes = synset.offsets[V];
+		int nounCount = nouns.count();
+
+		long ints = HEADER_INTS + (V + 1) + g.E() + (V + 1) + 2 * (nounCount + 1) + nouns.synsets.length
+				+ nouns.table.length;
+		int bytes = (int) (4 * ints + synsetBytes + nouns.arena.length);
+		ByteBuffer buf = (direct ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes))
+				.order(ByteOrder.LITTLE_ENDIAN);
+		buf.putInt(MAGIC).putInt(VERSION).putInt(V).putInt(g.E()).putInt(synsetBytes).putInt(nounCount)
+				.putInt(nouns.arena.length).putInt(nouns.synsets.length).putInt(nouns.table.length);
+		IntBuffer view = buf.asIntBuffer();
+		view.put(g.offsets);
+		view.put(g.targets);
+		view.put(synset.offsets, 0, V + 1);
+		view.put(nouns.nounStart).put(nouns.synsetStart).put(nouns.synsets).put(nouns.table);
+		buf.position(buf.position() + 4 * view.position());
+		buf.put(synset.arena, 0, synsetBytes);
+		buf.put(nouns.arena);
+		buf.flip();
+		return buf;
+	}
+
+	/**
+	 * Maps a snapshot file read-only and checks its header.
+	 *
+	 * @return the mapped little-endian bytes, positioned after the version
+	 */
+	static ByteBuffer map(Path file) throws IOException {
+		MappedByteBuffer map;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		return checkHeader(map.order(ByteOrder.LITTLE_ENDIAN), file.toString());
+	}
+
+	/**
+	 * Consumes the magic and version of buf, rejecting anything else, and
+	 * checks that the section counts after them are non-negative and that the
+	 * sections they describe fit in buf, so a truncated or corrupt snapshot
+	 * fails here rather than midway through copying it.
+	 */
+	static ByteBuffer checkHeader(ByteBuffer buf, String source) {
+		if (buf.remaining() < 4 * HEADER_INTS || buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+			throw new IllegalArgumentException("Not a WordNet snapshot: " + source);
+		}
+		int at = buf.position();
+		String[] names = { "V", "E", "synsetBytes", "nounCount", "nounBytes", "nounSynsets", "tableSize" };
+		long[] counts = new long[names.length];
+		for (int i = 0; i < names.length; i++) {
+			counts[i] = buf.getInt(at + 4 * i);
+			if (counts[i] < 0) {
+				throw new IllegalArgumentException(
+						"Corrupt WordNet snapshot " + source + ": negative " + names[i] + " " + counts[i]);
+			}
+		}
+		long tableSize = counts[6];
+		if (tableSize == 0 || (tableSize & (tableSize - 1)) != 0) {
+			throw new IllegalArgumentException(
+					"Corrupt WordNet snapshot " + source + ": tableSize " + tableSize + " is not a power of two");
+		}
+		long ints = names.length + 2 * (counts[0] + 1) + counts[1] + 2 * (counts[3] + 1) + counts[5] + tableSize;
+		long bytes = 4 * ints + counts[2] + counts[4];
+		if (bytes > buf.remaining()) {
+			throw new IllegalArgumentException("Truncated WordNet snapshot " + source + ": header describes " + bytes
+					+ " bytes after the version, file has " + buf.remaining());
+		}
+		return buf;
+	}
+
+	static WordNetSnapshot read(Path file) throws IOException {
+		ByteBuffer buf = map(file);
+		int V = buf.getInt();
+		int E = buf.getInt();
+		int synsetBytes = buf.getInt();
+		int nounCount = buf.getInt();
+		int nounBytes = buf.getInt();
+		int nounSynsets = buf.getInt();
+		int tableSize = buf.getInt();
+
+		IntBuffer view = buf.asIntBuffer();
+		int[] offsets = new int[V + 1];
+		int[] targets = new int[E];
+		int[] synsetOffsets = new int[V + 1];
+		int[] nounStart = new int[nounCount + 1];
+		int[] synsetStart = new int[nounCount + 1];
+		int[] synsets = new int[nounSynsets];
+		int[] table = new int[tableSize];
+		view.get(offsets).get(targets).get(synsetOffsets).get(nounStart).get(synsetStart).get(synsets).get(table);
+		buf.position(buf.position() + 4 * view.position());
+		byte[] synsetArena = new byte[synsetBytes];
+		byte[] nounArena = new byte[nounBytes];
+		buf.get(synsetArena).get(nounArena);
+
+		NounIndex nouns = new NounIndex(nounArena, nounStart, synsets, synsetStart, table);
+		return new WordNetSnapshot(new CsrDigraph(V, offsets, targets), new SynsetText(synsetArena, synsetOffsets, V),
+				nouns);
+	}
+
+}